@@ -0,0 +1,97 @@
+package fpt.kiennt169.e_commerce.config;
+
+import fpt.kiennt169.e_commerce.repositories.CartItemRepository;
+import fpt.kiennt169.e_commerce.repositories.CartRepository;
+import fpt.kiennt169.e_commerce.repositories.projections.DuplicateCartRef;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Cart lookups, guest merges and upserts rely on one cart per user and per session.
+ * ddl-auto cannot add uk_carts_user / uk_carts_session over existing duplicates, so before the web server
+ * starts the duplicates are merged into one cart and the constraints added; startup fails if they are still missing.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CartConstraintInitializer implements SmartInitializingSingleton {
+
+    static final String USER_CONSTRAINT = "uk_carts_user";
+    static final String SESSION_CONSTRAINT = "uk_carts_session";
+
+    private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (hasConstraints()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            cartRepository.lockTable();
+            List<String> existing = cartRepository.findUniqueConstraintNames();
+            LocalDateTime now = LocalDateTime.now();
+            if (!existing.contains(USER_CONSTRAINT)) {
+                int merged = mergeDuplicates(cartRepository.findDuplicateUserCarts(), DuplicateCartRef::getUserId, now);
+                cartRepository.addUserUniqueConstraint();
+                log.info("Added {} after merging {} duplicate user carts", USER_CONSTRAINT, merged);
+            }
+            if (!existing.contains(SESSION_CONSTRAINT)) {
+                int merged = mergeDuplicates(cartRepository.findDuplicateSessionCarts(), DuplicateCartRef::getSessionId, now);
+                cartRepository.addSessionUniqueConstraint();
+                log.info("Added {} after merging {} duplicate session carts", SESSION_CONSTRAINT, merged);
+            }
+        });
+        if (!hasConstraints()) {
+            throw new IllegalStateException("Table carts is missing " + USER_CONSTRAINT + " or " + SESSION_CONSTRAINT);
+        }
+    }
+
+    private boolean hasConstraints() {
+        List<String> names = transactionTemplate.execute(status -> cartRepository.findUniqueConstraintNames());
+        return names != null && names.contains(USER_CONSTRAINT) && names.contains(SESSION_CONSTRAINT);
+    }
+
+    /**
+     * Merge every cart of an owner into the first one. A cart of another user that merely shares
+     * the session only gives up its session id, the session is not needed once a cart has a user.
+     */
+    private int mergeDuplicates(List<DuplicateCartRef> carts, Function<DuplicateCartRef, Object> owner,
+                                LocalDateTime now) {
+        Map<Object, List<DuplicateCartRef>> byOwner = new LinkedHashMap<>();
+        carts.forEach(cart -> byOwner.computeIfAbsent(owner.apply(cart), key -> new ArrayList<>()).add(cart));
+
+        int merged = 0;
+        List<String> keptIds = new ArrayList<>();
+        for (List<DuplicateCartRef> group : byOwner.values()) {
+            DuplicateCartRef kept = group.getFirst();
+            keptIds.add(kept.getId());
+            for (DuplicateCartRef duplicate : group.subList(1, group.size())) {
+                if (duplicate.getUserId() != null && !Objects.equals(duplicate.getUserId(), kept.getUserId())) {
+                    cartRepository.clearSession(duplicate.getId());
+                    continue;
+                }
+                cartItemRepository.mergeInto(duplicate.getId(), kept.getId(), now);
+                cartItemRepository.deleteByCartId(duplicate.getId());
+                cartRepository.deleteCart(duplicate.getId());
+                merged++;
+            }
+        }
+        if (!keptIds.isEmpty()) {
+            cartRepository.recalculateTotals(keptIds);
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,31 @@
+package fpt.kiennt169.e_commerce.controllers;
+
+import fpt.kiennt169.e_commerce.dtos.ApiResponse;
+import fpt.kiennt169.e_commerce.dtos.product.CatalogChangeRequest;
+import fpt.kiennt169.e_commerce.services.ProductService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/v1/admin/catalog")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+@SecurityRequirement(name = "bearerAuth")
+@Tag(name = "Admin Catalog", description = "Admin catalog management APIs")
+public class AdminCatalogController {
+
+    private final ProductService productService;
+
+    @PostMapping("/changes")
+    @Operation(summary = "Announce catalog changes", description = "Admin only: Refresh everything derived from the given products (e.g. cart line prices) after they were changed outside the API")
+    public ResponseEntity<ApiResponse<Void>> catalogChanged(@Valid @RequestBody CatalogChangeRequest request) {
+        productService.publishCatalogChange(request.getProductIds());
+        return ResponseEntity.ok(ApiResponse.success(null, "Catalog change published"));
+    }
+}
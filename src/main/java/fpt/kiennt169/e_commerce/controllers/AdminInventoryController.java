@@ -0,0 +1,58 @@
+package fpt.kiennt169.e_commerce.controllers;
+
+import fpt.kiennt169.e_commerce.dtos.ApiResponse;
+import fpt.kiennt169.e_commerce.dtos.inventory.ConfigureBucketsRequest;
+import fpt.kiennt169.e_commerce.dtos.inventory.StockBucketsDTO;
+import fpt.kiennt169.e_commerce.services.InventoryService;
+import fpt.kiennt169.e_commerce.services.StockBucketService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/v1/admin/inventory")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+@SecurityRequirement(name = "bearerAuth")
+@Tag(name = "Admin Inventory", description = "Admin inventory management APIs")
+public class AdminInventoryController {
+
+    private final StockBucketService stockBucketService;
+    private final InventoryService inventoryService;
+
+    @Value("${inventory.reserved-resync.batch-size:500}")
+    private int resyncBatchSize;
+
+    @GetMapping("/variants/{variantId}/buckets")
+    @Operation(summary = "Get stock buckets", description = "Admin only: Get how a variant's sellable stock is split into buckets")
+    public ResponseEntity<ApiResponse<StockBucketsDTO>> getBuckets(@PathVariable Long variantId) {
+        return ResponseEntity.ok(ApiResponse.success(stockBucketService.getBuckets(variantId)));
+    }
+
+    @PutMapping("/variants/{variantId}/buckets")
+    @Operation(summary = "Configure stock buckets", description = "Admin only: Split a hot variant's stock into N buckets so reservations spread over N row locks (0 turns it off)")
+    public ResponseEntity<ApiResponse<StockBucketsDTO>> configureBuckets(
+            @PathVariable Long variantId,
+            @Valid @RequestBody ConfigureBucketsRequest request) {
+        return ResponseEntity.ok(ApiResponse.success(stockBucketService.configureBuckets(variantId, request.getBuckets())));
+    }
+
+    @PostMapping("/reserved/resync")
+    @Operation(summary = "Resync reserved quantities", description = "Admin only: Re-derive every variant's reserved quantity from its active reservations and buckets, in batches locked in id order")
+    public ResponseEntity<ApiResponse<Integer>> resyncReservedQuantities() {
+        int corrected = inventoryService.resyncReservedQuantities(resyncBatchSize);
+        return ResponseEntity.ok(ApiResponse.success(corrected, "Reserved quantities resynced"));
+    }
+
+    @PostMapping("/variants/{variantId}/buckets/rebalance")
+    @Operation(summary = "Rebalance stock buckets", description = "Admin only: Spread a variant's sellable stock evenly over its buckets")
+    public ResponseEntity<ApiResponse<StockBucketsDTO>> rebalance(@PathVariable Long variantId) {
+        return ResponseEntity.ok(ApiResponse.success(stockBucketService.rebalance(variantId)));
+    }
+}
@@ -19,11 +19,14 @@ import org.springframework.web.bind.annotation.*;
 public class AuthController {
 
     private final AuthService authService;
+    private static final String GUEST_ID_HEADER = "X-Guest-ID";
 
     @PostMapping("/login")
-    @Operation(summary = "User login", description = "Authenticate user and return JWT token")
-    public ResponseEntity<ApiResponse<AuthResponse>> login(@Valid @RequestBody LoginRequest request) {
-        return ResponseEntity.ok(ApiResponse.success(authService.login(request)));
+    @Operation(summary = "User login", description = "Authenticate user and return JWT token, merging the guest cart if a guest id is sent")
+    public ResponseEntity<ApiResponse<AuthResponse>> login(
+            @RequestHeader(value = GUEST_ID_HEADER, required = false) String guestId,
+            @Valid @RequestBody LoginRequest request) {
+        return ResponseEntity.ok(ApiResponse.success(authService.login(request, guestId)));
     }
 
     @PostMapping("/register")
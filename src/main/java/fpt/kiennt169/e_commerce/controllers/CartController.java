@@ -3,8 +3,10 @@ package fpt.kiennt169.e_commerce.controllers;
 import fpt.kiennt169.e_commerce.dtos.ApiResponse;
 import fpt.kiennt169.e_commerce.dtos.cart.*;
 import fpt.kiennt169.e_commerce.entities.User;
+import fpt.kiennt169.e_commerce.enums.CartView;
 import fpt.kiennt169.e_commerce.services.CartService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -31,51 +33,104 @@ public class CartController {
         String sessionId = user == null ? guestId : null;
 
         if (userId != null) {
-            return ResponseEntity.ok(ApiResponse.success(cartService.getOrCreateCartForUser(userId)));
+            return ResponseEntity.ok(ApiResponse.success(cartService.getCartForUser(userId)));
         } else if (sessionId != null) {
-            return ResponseEntity.ok(ApiResponse.success(cartService.getOrCreateCartForSession(sessionId)));
+            return ResponseEntity.ok(ApiResponse.success(cartService.getCartForSession(sessionId)));
         } else {
             throw new fpt.kiennt169.e_commerce.exceptions.BadRequestException("Either userId or guestId is required");
         }
     }
 
+    @GetMapping("/availability")
+    @Operation(summary = "Get cart availability", description = "Current stock of each cart line, cheap enough for checkout pages to poll")
+    public ResponseEntity<ApiResponse<CartAvailabilityDTO>> getCartAvailability(
+            @AuthenticationPrincipal User user,
+            @RequestHeader(value = GUEST_ID_HEADER, required = false) String guestId) {
+
+        Long userId = user != null ? user.getId() : null;
+        String sessionId = user == null ? guestId : null;
+
+        return ResponseEntity.ok(ApiResponse.success(cartService.getCartAvailability(userId, sessionId)));
+    }
+
     @PostMapping("/items")
     @Operation(summary = "Add to cart", description = "Add item to cart")
-    public ResponseEntity<ApiResponse<CartDTO>> addToCart(
+    public ResponseEntity<ApiResponse<?>> addToCart(
             @AuthenticationPrincipal User user,
             @RequestHeader(value = GUEST_ID_HEADER, required = false) String guestId,
+            @Parameter(description = "FULL returns the whole cart, DELTA only the changed item and the totals")
+            @RequestParam(defaultValue = "FULL") CartView view,
             @Valid @RequestBody AddToCartRequest request) {
 
         Long userId = user != null ? user.getId() : null;
         String sessionId = user == null ? guestId : null;
 
+        if (view == CartView.DELTA) {
+            return ResponseEntity.ok(ApiResponse.success(cartService.addToCartDelta(userId, sessionId, request)));
+        }
         return ResponseEntity.ok(ApiResponse.success(cartService.addToCart(userId, sessionId, request)));
     }
 
+    @PostMapping("/items/bulk")
+    @Operation(summary = "Bulk add to cart", description = "Add several items to cart in one request, with a result per item")
+    public ResponseEntity<ApiResponse<BulkCartResultDTO>> addAllToCart(
+            @AuthenticationPrincipal User user,
+            @RequestHeader(value = GUEST_ID_HEADER, required = false) String guestId,
+            @Valid @RequestBody BulkAddToCartRequest request) {
+
+        Long userId = user != null ? user.getId() : null;
+        String sessionId = user == null ? guestId : null;
+
+        return ResponseEntity.ok(ApiResponse.success(cartService.addAllToCart(userId, sessionId, request)));
+    }
+
     @PutMapping("/items/{itemId}")
     @Operation(summary = "Update cart item", description = "Update item quantity in cart")
-    public ResponseEntity<ApiResponse<CartDTO>> updateCartItem(
+    public ResponseEntity<ApiResponse<?>> updateCartItem(
             @AuthenticationPrincipal User user,
             @RequestHeader(value = GUEST_ID_HEADER, required = false) String guestId,
             @PathVariable String itemId,
+            @Parameter(description = "FULL returns the whole cart, DELTA only the changed item and the totals")
+            @RequestParam(defaultValue = "FULL") CartView view,
             @Valid @RequestBody UpdateCartItemRequest request) {
 
         Long userId = user != null ? user.getId() : null;
         String sessionId = user == null ? guestId : null;
 
+        if (view == CartView.DELTA) {
+            return ResponseEntity.ok(ApiResponse.success(cartService.updateCartItemDelta(userId, sessionId, itemId, request)));
+        }
         return ResponseEntity.ok(ApiResponse.success(cartService.updateCartItem(userId, sessionId, itemId, request)));
     }
 
     @DeleteMapping("/items/{itemId}")
     @Operation(summary = "Remove from cart", description = "Remove item from cart")
-    public ResponseEntity<ApiResponse<CartDTO>> removeFromCart(
+    public ResponseEntity<ApiResponse<?>> removeFromCart(
             @AuthenticationPrincipal User user,
             @RequestHeader(value = GUEST_ID_HEADER, required = false) String guestId,
-            @PathVariable String itemId) {
+            @PathVariable String itemId,
+            @Parameter(description = "FULL returns the whole cart, DELTA only the changed item and the totals")
+            @RequestParam(defaultValue = "FULL") CartView view) {
 
         Long userId = user != null ? user.getId() : null;
         String sessionId = user == null ? guestId : null;
 
+        if (view == CartView.DELTA) {
+            return ResponseEntity.ok(ApiResponse.success(cartService.removeFromCartDelta(userId, sessionId, itemId)));
+        }
         return ResponseEntity.ok(ApiResponse.success(cartService.removeFromCart(userId, sessionId, itemId)));
     }
+
+    @PostMapping("/merge")
+    @Operation(summary = "Merge guest cart", description = "Move the guest cart into the current user's cart, summing quantities")
+    public ResponseEntity<ApiResponse<CartDTO>> mergeGuestCart(
+            @AuthenticationPrincipal User user,
+            @RequestHeader(value = GUEST_ID_HEADER) String guestId) {
+
+        if (user == null) {
+            throw new fpt.kiennt169.e_commerce.exceptions.UnauthorizedException("Authentication required");
+        }
+        cartService.mergeGuestCart(user.getId(), guestId);
+        return ResponseEntity.ok(ApiResponse.success(cartService.getCartForUser(user.getId())));
+    }
 }
@@ -1,8 +1,10 @@
 package fpt.kiennt169.e_commerce.controllers;
 
 import fpt.kiennt169.e_commerce.dtos.ApiResponse;
+import fpt.kiennt169.e_commerce.dtos.CursorPageResponse;
 import fpt.kiennt169.e_commerce.dtos.order.*;
 import fpt.kiennt169.e_commerce.entities.User;
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
 import fpt.kiennt169.e_commerce.services.OrderService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -25,18 +27,21 @@ public class OrderController {
 
     private final OrderService orderService;
     private static final String GUEST_ID_HEADER = "X-Guest-ID";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
 
     @PostMapping
-    @Operation(summary = "Create order", description = "Create order from cart (checkout)")
+    @Operation(summary = "Create order", description = "Create order from cart (checkout). " +
+            "Retries sent with the same Idempotency-Key return the original order")
     public ResponseEntity<ApiResponse<OrderDTO>> createOrder(
             @AuthenticationPrincipal User user,
             @RequestHeader(value = GUEST_ID_HEADER, required = false) String guestId,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
             @Valid @RequestBody CreateOrderRequest request) {
 
         Long userId = user != null ? user.getId() : null;
         String sessionId = user == null ? guestId : null;
 
-        return ResponseEntity.ok(ApiResponse.success(orderService.createOrder(userId, sessionId, request)));
+        return ResponseEntity.ok(ApiResponse.success(orderService.createOrder(userId, sessionId, request, idempotencyKey)));
     }
 
     @GetMapping("/{id}")
@@ -62,6 +67,32 @@ public class OrderController {
         return ResponseEntity.ok(ApiResponse.success(orderService.getUserOrders(user.getId(), pageable)));
     }
 
+    @GetMapping("/cursor")
+    @SecurityRequirement(name = "bearerAuth")
+    @Operation(summary = "Get my orders by cursor", description = "Keyset paginated list of authenticated user's orders, newest first, without a total count")
+    public ResponseEntity<ApiResponse<CursorPageResponse<OrderListDTO>>> getMyOrdersByCursor(
+            @AuthenticationPrincipal User user,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        if (user == null) {
+            throw new fpt.kiennt169.e_commerce.exceptions.UnauthorizedException("Authentication required");
+        }
+
+        return ResponseEntity.ok(ApiResponse.success(orderService.getUserOrders(user.getId(), cursor, size)));
+    }
+
+    @GetMapping("/admin/cursor")
+    @PreAuthorize("hasRole('ADMIN')")
+    @SecurityRequirement(name = "bearerAuth")
+    @Operation(summary = "Get all orders by cursor", description = "Admin only: Keyset paginated list of all orders, optionally of one status, newest first, without a total count")
+    public ResponseEntity<ApiResponse<CursorPageResponse<OrderListDTO>>> getAllOrdersAdminByCursor(
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(ApiResponse.success(orderService.getAllOrders(status, cursor, size)));
+    }
+
     @GetMapping("/admin")
     @PreAuthorize("hasRole('ADMIN')")
     @SecurityRequirement(name = "bearerAuth")
@@ -79,6 +110,15 @@ public class OrderController {
         return ResponseEntity.ok(ApiResponse.success(orderService.getOrderById(id)));
     }
 
+    @PatchMapping("/admin/status")
+    @PreAuthorize("hasRole('ADMIN')")
+    @SecurityRequirement(name = "bearerAuth")
+    @Operation(summary = "Bulk update order status", description = "Admin only: Move many orders to one status, with one result per order")
+    public ResponseEntity<ApiResponse<BulkOrderStatusResultDTO>> bulkUpdateOrderStatus(
+            @Valid @RequestBody BulkUpdateOrderStatusRequest request) {
+        return ResponseEntity.ok(ApiResponse.success(orderService.bulkUpdateOrderStatus(request)));
+    }
+
     @PatchMapping("/admin/{id}/status")
     @PreAuthorize("hasRole('ADMIN')")
     @SecurityRequirement(name = "bearerAuth")
@@ -0,0 +1,46 @@
+package fpt.kiennt169.e_commerce.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.function.Function;
+
+@Schema(description = "Cursor paginated response wrapper, without a total count")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CursorPageResponse<T> {
+
+    @Schema(description = "List of items in current page")
+    private List<T> content;
+
+    @Schema(description = "Page size", example = "20")
+    private int size;
+
+    @Schema(description = "Opaque cursor of the next page, null on the last page")
+    private String nextCursor;
+
+    @Schema(description = "Is there a next page?", example = "true")
+    private boolean hasNext;
+
+    /**
+     * Build a page from up to size + 1 rows; the extra row only tells that a next page exists
+     */
+    public static <T> CursorPageResponse<T> of(List<T> rows, int size, Function<T, String> cursorOf) {
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? rows.subList(0, size) : rows;
+        return CursorPageResponse.<T>builder()
+                .content(content)
+                .size(size)
+                .nextCursor(hasNext ? cursorOf.apply(content.get(content.size() - 1)) : null)
+                .hasNext(hasNext)
+                .build();
+    }
+}
@@ -0,0 +1,28 @@
+package fpt.kiennt169.e_commerce.dtos.cart;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkAddToCartRequest {
+
+    @NotEmpty(message = "Items are required")
+    @Size(max = 100, message = "At most 100 items per request")
+    private List<@Valid AddToCartRequest> items;
+
+    /**
+     * Set the cart quantity of each variant instead of adding to it (offline cart replay)
+     */
+    @Builder.Default
+    private boolean replace = false;
+}
@@ -0,0 +1,23 @@
+package fpt.kiennt169.e_commerce.dtos.cart;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cart after a bulk add, with one result per requested variant
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkCartResultDTO {
+
+    private CartDTO cart;
+    private List<CartLineResultDTO> results;
+    private int succeeded;
+    private int failed;
+}
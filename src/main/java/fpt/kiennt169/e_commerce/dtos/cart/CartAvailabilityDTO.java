@@ -0,0 +1,35 @@
+package fpt.kiennt169.e_commerce.dtos.cart;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Current stock of every cart line, without the rest of the cart view
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartAvailabilityDTO {
+
+    private List<Line> lines;
+    private boolean allAvailable;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Line {
+
+        private Long itemId;
+        private Long variantId;
+        private Integer quantity;
+        private Integer availableStock;
+        private Boolean inStock;
+        private Boolean exceedsStock;
+    }
+}
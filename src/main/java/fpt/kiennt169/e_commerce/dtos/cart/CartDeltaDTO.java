@@ -0,0 +1,26 @@
+package fpt.kiennt169.e_commerce.dtos.cart;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Result of a cart mutation in delta view: the changed line (or the id of the removed one) and the cart totals
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartDeltaDTO {
+
+    private String cartId;
+    private CartItemDTO item;
+    private Long removedItemId;
+    private Integer totalItems;
+    private BigDecimal totalPrice;
+    private LocalDateTime updatedAt;
+}
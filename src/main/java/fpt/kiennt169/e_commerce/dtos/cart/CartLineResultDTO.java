@@ -0,0 +1,19 @@
+package fpt.kiennt169.e_commerce.dtos.cart;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartLineResultDTO {
+
+    private Long variantId;
+    private Integer quantity;
+    private boolean success;
+    private String errorCode;
+    private String message;
+}
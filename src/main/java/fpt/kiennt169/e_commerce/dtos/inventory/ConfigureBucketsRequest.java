@@ -0,0 +1,21 @@
+package fpt.kiennt169.e_commerce.dtos.inventory;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConfigureBucketsRequest {
+
+    @NotNull(message = "Bucket count is required")
+    @Min(value = 0, message = "Bucket count must be 0 (off) or more")
+    @Max(value = 64, message = "Bucket count must be at most 64")
+    private Integer buckets;
+}
@@ -0,0 +1,29 @@
+package fpt.kiennt169.e_commerce.dtos.inventory;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockBucketsDTO {
+
+    private Long variantId;
+    private Integer stockBuckets;
+    private Integer totalAvailable;
+    private List<Bucket> buckets;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bucket {
+        private Integer bucketNo;
+        private Integer available;
+    }
+}
@@ -0,0 +1,24 @@
+package fpt.kiennt169.e_commerce.dtos.order;
+
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk status transition, with one result per requested order
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkOrderStatusResultDTO {
+
+    private OrderStatus status;
+    private List<OrderStatusResultDTO> results;
+    private int succeeded;
+    private int failed;
+}
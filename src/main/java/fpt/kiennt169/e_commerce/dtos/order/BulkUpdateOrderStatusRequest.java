@@ -0,0 +1,27 @@
+package fpt.kiennt169.e_commerce.dtos.order;
+
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkUpdateOrderStatusRequest {
+
+    @NotEmpty(message = "Order ids are required")
+    @Size(max = 10000, message = "At most 10000 orders per request")
+    private List<String> orderIds;
+
+    @NotNull(message = "Status is required")
+    private OrderStatus status;
+
+}
@@ -0,0 +1,20 @@
+package fpt.kiennt169.e_commerce.dtos.order;
+
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusResultDTO {
+
+    private String orderId;
+    private OrderStatus previousStatus;
+    private boolean success;
+    private String errorCode;
+    private String message;
+}
@@ -0,0 +1,19 @@
+package fpt.kiennt169.e_commerce.dtos.product;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogChangeRequest {
+
+    @NotEmpty(message = "Product IDs are required")
+    private List<Long> productIds;
+}
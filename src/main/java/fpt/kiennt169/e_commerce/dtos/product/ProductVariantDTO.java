@@ -19,5 +19,6 @@ public class ProductVariantDTO {
     private String color;
     private BigDecimal price;
     private Integer stockQuantity;
+    private Integer availableStock;
     private Boolean inStock;
 }
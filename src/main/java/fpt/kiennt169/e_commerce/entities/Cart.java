@@ -1,5 +1,7 @@
 package fpt.kiennt169.e_commerce.entities;
 
+import fpt.kiennt169.e_commerce.util.Money;
+import fpt.kiennt169.e_commerce.util.MoneyConverter;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
@@ -9,9 +11,13 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "carts", indexes = {
+@Table(name = "carts", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_carts_user", columnNames = "user_id"),
+        @UniqueConstraint(name = "uk_carts_session", columnNames = "session_id")
+}, indexes = {
         @Index(name = "idx_carts_user", columnList = "user_id"),
-        @Index(name = "idx_carts_session", columnList = "session_id")
+        @Index(name = "idx_carts_session", columnList = "session_id"),
+        @Index(name = "idx_carts_updated", columnList = "updated_at")
 })
 @Getter
 @Setter
@@ -31,10 +37,29 @@ public class Cart extends BaseEntity {
     @Column(name = "session_id", length = 36)
     private String sessionId;
 
+    /**
+     * Every cart write bumps the version, concurrent writes to the same cart are retried
+     */
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
     @Builder.Default
     private List<CartItem> items = new ArrayList<>();
 
+    /**
+     * Running totals, adjusted by every item change so they can be returned without loading the items
+     */
+    @Column(name = "total_items", nullable = false, columnDefinition = "integer default 0")
+    @Builder.Default
+    private Integer totalItems = 0;
+
+    @Column(name = "total_price", nullable = false, precision = 19, scale = 2, columnDefinition = "numeric(19,2) default 0")
+    @Convert(converter = MoneyConverter.class)
+    @Builder.Default
+    private Money totalPrice = Money.ZERO;
+
     @PrePersist
     public void prePersist() {
         if (id == null) {
@@ -55,5 +80,29 @@ public class Cart extends BaseEntity {
     public void clearItems() {
         items.forEach(item -> item.setCart(null));
         items.clear();
+        totalItems = 0;
+        totalPrice = Money.ZERO;
+    }
+
+    /**
+     * Apply the change of one line (quantity and subtotal before vs after) to the running totals
+     */
+    public void adjustTotals(int quantityDelta, Money subtotalDelta) {
+        totalItems += quantityDelta;
+        totalPrice = totalPrice.plus(subtotalDelta);
+    }
+
+    /**
+     * Reset the running totals from the given items
+     */
+    public void recalculateTotals(List<CartItem> cartItems) {
+        int items = 0;
+        long price = 0;
+        for (CartItem item : cartItems) {
+            items += item.getQuantity();
+            price = Math.addExact(price, item.getSubtotal().minorUnits());
+        }
+        totalItems = items;
+        totalPrice = new Money(price);
     }
 }
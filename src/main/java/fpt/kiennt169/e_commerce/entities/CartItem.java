@@ -1,10 +1,12 @@
 package fpt.kiennt169.e_commerce.entities;
 
+import fpt.kiennt169.e_commerce.util.Money;
+import fpt.kiennt169.e_commerce.util.MoneyConverter;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
-import java.math.BigDecimal;
+import java.util.List;
 
 @Entity
 @Table(name = "cart_items", indexes = {
@@ -35,12 +37,60 @@ public class CartItem extends BaseEntity {
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
 
-    public BigDecimal getSubtotal() {
-        return productVariant.getPrice().multiply(BigDecimal.valueOf(quantity));
+    /**
+     * Snapshot of the variant and product as shown in the cart, so views read cart_items only.
+     * Taken when the line is added and refreshed on catalog changes.
+     */
+    @Column(name = "unit_price", precision = 19, scale = 2)
+    @Convert(converter = MoneyConverter.class)
+    private Money unitPrice;
+
+    @Column(name = "variant_sku", length = 100)
+    private String variantSku;
+
+    @Column(name = "variant_size", length = 50)
+    private String variantSize;
+
+    @Column(name = "variant_color", length = 50)
+    private String variantColor;
+
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "product_name", length = 255)
+    private String productName;
+
+    @Column(name = "product_image_url", length = 500)
+    private String productImageUrl;
+
+    /**
+     * Lines written before the snapshot existed fall back to the variant until they are backfilled
+     */
+    public Money getSubtotal() {
+        Money price = unitPrice != null ? unitPrice : Money.of(productVariant.getPrice());
+        return price.times(quantity);
+    }
+
+    public void snapshot(ProductVariant variant) {
+        Product product = variant.getProduct();
+        this.unitPrice = Money.of(variant.getPrice());
+        this.variantSku = variant.getSku();
+        this.variantSize = variant.getSize();
+        this.variantColor = variant.getColor();
+        this.productId = product != null ? product.getId() : null;
+        this.productName = product != null ? product.getName() : null;
+        this.productImageUrl = product != null ? thumbnailUrl(product.getImages()) : null;
     }
 
-    public BigDecimal getUnitPrice() {
-        return productVariant.getPrice();
+    private static String thumbnailUrl(List<ProductImage> images) {
+        if (images == null || images.isEmpty()) {
+            return null;
+        }
+        return images.stream()
+                .filter(image -> Boolean.TRUE.equals(image.getIsThumbnail()))
+                .findFirst()
+                .orElse(images.get(0))
+                .getImageUrl();
     }
 
     public boolean exceedsStock() {
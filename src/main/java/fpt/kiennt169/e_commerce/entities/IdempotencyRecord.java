@@ -0,0 +1,48 @@
+package fpt.kiennt169.e_commerce.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response of a request sent with an Idempotency-Key, kept until expires_at so a retry
+ * of the same request gets the original response back instead of running again.
+ * Rows are written with native statements (see IdempotencyRecordRepository), never through the entity manager.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = {
+        @Index(name = "idx_idempotency_keys_expires", columnList = "expires_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdempotencyRecord {
+
+    /**
+     * Caller (user or guest session) and the client's key
+     */
+    @Id
+    @Column(name = "id", length = 400)
+    private String id;
+
+    /**
+     * SHA-256 of the request body, a key reused for a different request is rejected
+     */
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    /**
+     * Serialized response, written in the same transaction as the work it describes
+     */
+    @Column(name = "response", columnDefinition = "TEXT")
+    private String response;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
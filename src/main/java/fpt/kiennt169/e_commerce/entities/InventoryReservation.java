@@ -35,6 +35,12 @@ public class InventoryReservation extends BaseEntity {
     @Column(name = "session_id", nullable = false, length = 255)
     private String sessionId;
 
+    /**
+     * Stock bucket the quantity was taken from, null when it was reserved on the variant row
+     */
+    @Column(name = "bucket_no")
+    private Integer bucketNo;
+
     @Column(name = "expiry_time", nullable = false)
     private LocalDateTime expiryTime;
 
@@ -0,0 +1,54 @@
+package fpt.kiennt169.e_commerce.entities;
+
+import fpt.kiennt169.e_commerce.enums.ReservationStatus;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reservations that reached a terminal state (COMPLETED, CANCELLED, EXPIRED) and were moved out
+ * of inventory_reservations, so the hot table only holds ACTIVE rows plus a short tail
+ */
+@Entity
+@Table(name = "inventory_reservations_archive", indexes = {
+        @Index(name = "idx_reservations_archive_session", columnList = "session_id"),
+        @Index(name = "idx_reservations_archive_archived", columnList = "archived_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@SuperBuilder
+public class InventoryReservationArchive extends BaseEntity {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "product_variant_id", nullable = false)
+    private Long productVariantId;
+
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Column(name = "session_id", nullable = false, length = 255)
+    private String sessionId;
+
+    /**
+     * Stock bucket the quantity was taken from, null when it was reserved on the variant row
+     */
+    @Column(name = "bucket_no")
+    private Integer bucketNo;
+
+    @Column(name = "expiry_time", nullable = false)
+    private LocalDateTime expiryTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 50, nullable = false)
+    private ReservationStatus status;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+}
@@ -19,6 +19,7 @@ import java.util.UUID;
         @Index(name = "idx_orders_status", columnList = "status"),
         @Index(name = "idx_orders_user_created", columnList = "user_id, created_at"),
         @Index(name = "idx_orders_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_orders_created", columnList = "created_at"),
         @Index(name = "idx_orders_customer_email_created", columnList = "customer_email, created_at")
     }
 )
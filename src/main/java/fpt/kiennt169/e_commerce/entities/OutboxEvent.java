@@ -0,0 +1,63 @@
+package fpt.kiennt169.e_commerce.entities;
+
+import fpt.kiennt169.e_commerce.enums.OutboxEventType;
+import fpt.kiennt169.e_commerce.enums.OutboxStatus;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.time.LocalDateTime;
+
+/**
+ * Side effect of a business transaction (an email to send), written in that transaction
+ * and delivered by the outbox dispatcher once it has committed
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_status_next", columnList = "status, next_attempt_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@SuperBuilder
+public class OutboxEvent extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", length = 50, nullable = false)
+    private OutboxEventType type;
+
+    /**
+     * Id of the entity the event is about (the order)
+     */
+    @Column(name = "aggregate_id", length = 36, nullable = false)
+    private String aggregateId;
+
+    @Column(name = "payload", columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 50, nullable = false)
+    @Builder.Default
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    /**
+     * When the event is due; moved forward while a dispatcher holds it and after a failed attempt
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
@@ -39,6 +39,20 @@ public class ProductVariant extends BaseEntity {
     @Column(name = "stock_quantity", nullable = false)
     private Integer stockQuantity = 0;
 
+    /**
+     * Denormalized sum of ACTIVE reservations, only changed through atomic updates
+     */
+    @Builder.Default
+    @Column(name = "reserved_quantity", nullable = false, columnDefinition = "integer default 0")
+    private Integer reservedQuantity = 0;
+
+    /**
+     * Number of stock buckets the sellable stock is split into, 0 when the variant is not bucketed
+     */
+    @Builder.Default
+    @Column(name = "stock_buckets", nullable = false, columnDefinition = "integer default 0")
+    private Integer stockBuckets = 0;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id")
     private Product product;
@@ -50,4 +64,8 @@ public class ProductVariant extends BaseEntity {
     public boolean isInStock() {
         return stockQuantity > 0;
     }
+
+    public boolean isBucketed() {
+        return stockBuckets != null && stockBuckets > 0;
+    }
 }
@@ -0,0 +1,37 @@
+package fpt.kiennt169.e_commerce.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * Slice of a hot variant's sellable stock. Reservations take from a bucket row instead of the variant row,
+ * so concurrent reservations spread over several row locks. The quantity held by the buckets
+ * is counted in the variant's reserved_quantity until it is reserved and confirmed.
+ */
+@Entity
+@Table(name = "stock_buckets", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_stock_buckets_variant_bucket", columnNames = {"variant_id", "bucket_no"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@SuperBuilder
+public class StockBucket extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "variant_id", nullable = false)
+    private ProductVariant variant;
+
+    @Column(name = "bucket_no", nullable = false)
+    private Integer bucketNo;
+
+    @Builder.Default
+    @Column(name = "available", nullable = false)
+    private Integer available = 0;
+}
@@ -0,0 +1,9 @@
+package fpt.kiennt169.e_commerce.enums;
+
+/**
+ * Response shape of cart mutations: the whole cart, or only the changed line and the new totals
+ */
+public enum CartView {
+    FULL,
+    DELTA
+}
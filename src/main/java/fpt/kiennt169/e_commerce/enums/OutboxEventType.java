@@ -0,0 +1,16 @@
+package fpt.kiennt169.e_commerce.enums;
+
+/**
+ * Side effects recorded in the outbox and delivered after the transaction that produced them commits
+ */
+public enum OutboxEventType {
+    /**
+     * Order confirmation email
+     */
+    ORDER_CONFIRMATION,
+
+    /**
+     * Order status update email
+     */
+    ORDER_STATUS_UPDATE
+}
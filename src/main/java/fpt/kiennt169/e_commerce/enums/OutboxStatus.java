@@ -0,0 +1,22 @@
+package fpt.kiennt169.e_commerce.enums;
+
+/**
+ * Outbox event status enumeration
+ * Lifecycle: PENDING → SENT, or FAILED once every attempt is used up
+ */
+public enum OutboxStatus {
+    /**
+     * Waiting for the dispatcher, possibly after failed attempts
+     */
+    PENDING,
+
+    /**
+     * Delivered
+     */
+    SENT,
+
+    /**
+     * Given up after the maximum number of attempts
+     */
+    FAILED
+}
@@ -0,0 +1,17 @@
+package fpt.kiennt169.e_commerce.enums;
+
+/**
+ * How InventoryService guards a reservation against overselling
+ */
+public enum ReservationMode {
+    /**
+     * Lock the variant row, SUM active reservations, then insert
+     */
+    LOCKING,
+
+    /**
+     * Single guarded UPDATE on product_variants.reserved_quantity,
+     * the affected row count decides the reservation
+     */
+    CONDITIONAL_UPDATE
+}
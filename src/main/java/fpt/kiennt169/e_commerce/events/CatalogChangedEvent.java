@@ -0,0 +1,9 @@
+package fpt.kiennt169.e_commerce.events;
+
+import java.util.Set;
+
+/**
+ * Published after product or variant data that carts copy (name, images, price, SKU, size, color) changed
+ */
+public record CatalogChangedEvent(Set<Long> productIds) {
+}
@@ -0,0 +1,13 @@
+package fpt.kiennt169.e_commerce.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class ConflictException extends BaseException {
+
+    private static final String ERROR_CODE = "CONFLICT";
+
+    public ConflictException(String message) {
+        super(message, HttpStatus.CONFLICT, ERROR_CODE);
+    }
+
+}
@@ -0,0 +1,13 @@
+package fpt.kiennt169.e_commerce.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class TooManyRequestsException extends BaseException {
+
+    private static final String ERROR_CODE = "TOO_MANY_REQUESTS";
+
+    public TooManyRequestsException(String message) {
+        super(message, HttpStatus.TOO_MANY_REQUESTS, ERROR_CODE);
+    }
+
+}
@@ -4,14 +4,15 @@ import fpt.kiennt169.e_commerce.dtos.cart.CartDTO;
 import fpt.kiennt169.e_commerce.dtos.cart.CartItemDTO;
 import fpt.kiennt169.e_commerce.entities.Cart;
 import fpt.kiennt169.e_commerce.entities.CartItem;
-import fpt.kiennt169.e_commerce.entities.ProductImage;
-import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.util.Money;
+import org.mapstruct.Context;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Named;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 @Mapper(componentModel = "spring")
 public interface CartMapper {
@@ -19,66 +20,95 @@ public interface CartMapper {
     @Mapping(target = "items", source = "items")
     @Mapping(target = "totalItems", source = "cart", qualifiedByName = "getTotalItems")
     @Mapping(target = "totalPrice", source = "cart", qualifiedByName = "getTotalPrice")
-    CartDTO toDTO(Cart cart);
+    CartDTO toDTO(Cart cart, @Context Map<Long, Integer> availableStock);
+
+    /**
+     * Cart view from items loaded separately from the cart row
+     */
+    @Mapping(target = "id", source = "cart.id")
+    @Mapping(target = "items", source = "cartItems")
+    @Mapping(target = "totalItems", source = "cartItems", qualifiedByName = "sumQuantities")
+    @Mapping(target = "totalPrice", source = "cartItems", qualifiedByName = "sumSubtotals")
+    @Mapping(target = "createdAt", source = "cart.createdAt")
+    @Mapping(target = "updatedAt", source = "cart.updatedAt")
+    CartDTO toDTO(Cart cart, List<CartItem> cartItems, @Context Map<Long, Integer> availableStock);
 
     @Mapping(target = "variantId", source = "productVariant.id")
-    @Mapping(target = "variantSku", source = "productVariant.sku")
-    @Mapping(target = "variantSize", source = "productVariant.size")
-    @Mapping(target = "variantColor", source = "productVariant.color")
-    @Mapping(target = "unitPrice", source = "item", qualifiedByName = "getUnitPrice")
-    @Mapping(target = "subtotal", source = "item", qualifiedByName = "getSubtotal")
-    @Mapping(target = "productId", source = "productVariant.product.id")
-    @Mapping(target = "productName", source = "productVariant.product.name")
-    @Mapping(target = "productImageUrl", source = "item", qualifiedByName = "getProductImageUrl")
-    @Mapping(target = "availableStock", source = "productVariant.stockQuantity")
-    @Mapping(target = "inStock", source = "productVariant", qualifiedByName = "isVariantInStock")
+    @Mapping(target = "availableStock", source = "item", qualifiedByName = "getAvailableStock")
+    @Mapping(target = "inStock", source = "item", qualifiedByName = "isVariantInStock")
     @Mapping(target = "exceedsStock", source = "item", qualifiedByName = "doesExceedStock")
-    CartItemDTO toItemDTO(CartItem item);
+    CartItemDTO toItemDTO(CartItem item, @Context Map<Long, Integer> availableStock);
+
+    List<CartItemDTO> toItemDTOs(List<CartItem> items, @Context Map<Long, Integer> availableStock);
+
+    /**
+     * Copy of a (cached) cart view with current stock figures
+     */
+    CartDTO withStock(CartDTO cart, @Context Map<Long, Integer> availableStock);
+
+    @Mapping(target = "availableStock", source = "item", qualifiedByName = "currentAvailableStock")
+    @Mapping(target = "inStock", expression = "java(currentAvailableStock(item, availableStock) > 0)")
+    @Mapping(target = "exceedsStock", expression = "java(item.getQuantity() > currentAvailableStock(item, availableStock))")
+    CartItemDTO withStock(CartItemDTO item, @Context Map<Long, Integer> availableStock);
 
-    List<CartItemDTO> toItemDTOs(List<CartItem> items);
+    List<CartItemDTO> withStock(List<CartItemDTO> items, @Context Map<Long, Integer> availableStock);
 
     @Named("getTotalItems")
     default Integer getTotalItems(Cart cart) {
-        if (cart.getItems() == null) return 0;
-        return cart.getItems().stream()
-                .mapToInt(CartItem::getQuantity)
-                .sum();
+        return sumQuantities(cart.getItems());
     }
 
     @Named("getTotalPrice")
     default BigDecimal getTotalPrice(Cart cart) {
-        if (cart.getItems() == null) return BigDecimal.ZERO;
-        return cart.getItems().stream()
-                .map(CartItem::getSubtotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return sumSubtotals(cart.getItems());
+    }
+
+    @Named("sumQuantities")
+    default Integer sumQuantities(List<CartItem> items) {
+        if (items == null) return 0;
+        return items.stream()
+                .mapToInt(CartItem::getQuantity)
+                .sum();
     }
 
-    @Named("getUnitPrice")
-    default BigDecimal getUnitPrice(CartItem item) {
-        return item.getUnitPrice();
+    @Named("sumSubtotals")
+    default BigDecimal sumSubtotals(List<CartItem> items) {
+        if (items == null) return BigDecimal.ZERO;
+        long total = 0;
+        for (CartItem item : items) {
+            total = Math.addExact(total, item.getSubtotal().minorUnits());
+        }
+        return Money.toBigDecimal(total);
     }
 
-    @Named("getSubtotal")
-    default BigDecimal getSubtotal(CartItem item) {
-        return item.getSubtotal();
+    /**
+     * Amounts leave the cart as BigDecimal only at the response boundary
+     */
+    default BigDecimal toBigDecimal(Money money) {
+        return money != null ? money.toBigDecimal() : null;
     }
 
-    @Named("getProductImageUrl")
-    default String getProductImageUrl(CartItem item) {
-        if (item.getProductVariant() == null || item.getProductVariant().getProduct() == null) {
-            return null;
-        }
-        List<ProductImage> images = item.getProductVariant().getProduct().getImages();
-        return (images != null && !images.isEmpty()) ? images.get(0).getImageUrl() : null;
+    /**
+     * Reservation-aware stock from the caller, looked up for every variant in the cart
+     */
+    @Named("getAvailableStock")
+    default Integer getAvailableStock(CartItem item, @Context Map<Long, Integer> availableStock) {
+        if (item.getProductVariant() == null) return 0;
+        return availableStock.getOrDefault(item.getProductVariant().getId(), 0);
+    }
+
+    @Named("currentAvailableStock")
+    default Integer currentAvailableStock(CartItemDTO item, @Context Map<Long, Integer> availableStock) {
+        return availableStock.getOrDefault(item.getVariantId(), item.getAvailableStock());
     }
 
     @Named("isVariantInStock")
-    default Boolean isVariantInStock(ProductVariant variant) {
-        return variant != null && variant.isInStock();
+    default Boolean isVariantInStock(CartItem item, @Context Map<Long, Integer> availableStock) {
+        return getAvailableStock(item, availableStock) > 0;
     }
 
     @Named("doesExceedStock")
-    default Boolean doesExceedStock(CartItem item) {
-        return item.exceedsStock();
+    default Boolean doesExceedStock(CartItem item, @Context Map<Long, Integer> availableStock) {
+        return item.getQuantity() > getAvailableStock(item, availableStock);
     }
 }
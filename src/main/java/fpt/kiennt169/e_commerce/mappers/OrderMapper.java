@@ -5,6 +5,7 @@ import fpt.kiennt169.e_commerce.dtos.order.OrderItemDTO;
 import fpt.kiennt169.e_commerce.dtos.order.OrderListDTO;
 import fpt.kiennt169.e_commerce.entities.Order;
 import fpt.kiennt169.e_commerce.entities.OrderItem;
+import fpt.kiennt169.e_commerce.repositories.projections.OrderSummary;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Named;
@@ -20,10 +21,9 @@ public interface OrderMapper {
     @Mapping(target = "totalItems", source = "order", qualifiedByName = "getTotalItems")
     OrderDTO toDTO(Order order);
 
-    @Mapping(target = "totalItems", source = "order", qualifiedByName = "getTotalItems")
-    OrderListDTO toListDTO(Order order);
+    OrderListDTO toListDTO(OrderSummary summary);
 
-    List<OrderListDTO> toListDTOs(List<Order> orders);
+    List<OrderListDTO> toListDTOs(List<OrderSummary> summaries);
 
     @Mapping(target = "variantId", source = "productVariant.id")
     @Mapping(target = "subtotal", source = "item", qualifiedByName = "getSubtotal")
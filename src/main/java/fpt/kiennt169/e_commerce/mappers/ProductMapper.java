@@ -7,7 +7,12 @@ import fpt.kiennt169.e_commerce.entities.ProductVariant;
 import org.mapstruct.*;
 
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Stock figures are reservation-aware: the caller passes available stock
+ * keyed by variant id (product details) or by product id (listings).
+ */
 @Mapper(componentModel = "spring")
 public interface ProductMapper {
 
@@ -17,37 +22,54 @@ public interface ProductMapper {
     @Mapping(target = "variants", source = "variants")
     @Mapping(target = "totalStock", source = "product", qualifiedByName = "getTotalStock")
     @Mapping(target = "inStock", source = "product", qualifiedByName = "isInStock")
-    ProductDTO toDTO(Product product);
+    ProductDTO toDTO(Product product, @Context Map<Long, Integer> variantStock);
 
     @Mapping(target = "categoryName", source = "category.name")
-    @Mapping(target = "totalStock", source = "product", qualifiedByName = "getTotalStock")
-    @Mapping(target = "inStock", source = "product", qualifiedByName = "isInStock")
-    ProductListDTO toListDTO(Product product);
+    @Mapping(target = "totalStock", source = "product", qualifiedByName = "getListedStock")
+    @Mapping(target = "inStock", source = "product", qualifiedByName = "isListedInStock")
+    ProductListDTO toListDTO(Product product, @Context Map<Long, Integer> productStock);
 
-    List<ProductListDTO> toListDTOs(List<Product> products);
+    List<ProductListDTO> toListDTOs(List<Product> products, @Context Map<Long, Integer> productStock);
 
     ProductImageDTO toImageDTO(ProductImage image);
 
     List<ProductImageDTO> toImageDTOs(List<ProductImage> images);
 
+    @Mapping(target = "availableStock", source = "variant", qualifiedByName = "variantAvailableStock")
     @Mapping(target = "inStock", source = "variant", qualifiedByName = "variantInStock")
-    ProductVariantDTO toVariantDTO(ProductVariant variant);
+    ProductVariantDTO toVariantDTO(ProductVariant variant, @Context Map<Long, Integer> variantStock);
 
-    List<ProductVariantDTO> toVariantDTOs(List<ProductVariant> variants);
+    List<ProductVariantDTO> toVariantDTOs(List<ProductVariant> variants, @Context Map<Long, Integer> variantStock);
 
     @Named("getTotalStock")
-    default Integer getTotalStock(Product product) {
-        return product.getTotalStock();
+    default Integer getTotalStock(Product product, @Context Map<Long, Integer> variantStock) {
+        return product.getVariants().stream()
+                .mapToInt(variant -> variantAvailableStock(variant, variantStock))
+                .sum();
     }
 
     @Named("isInStock")
-    default Boolean isInStock(Product product) {
-        return product.isInStock();
+    default Boolean isInStock(Product product, @Context Map<Long, Integer> variantStock) {
+        return getTotalStock(product, variantStock) > 0;
+    }
+
+    @Named("getListedStock")
+    default Integer getListedStock(Product product, @Context Map<Long, Integer> productStock) {
+        return productStock.getOrDefault(product.getId(), 0);
+    }
+
+    @Named("isListedInStock")
+    default Boolean isListedInStock(Product product, @Context Map<Long, Integer> productStock) {
+        return getListedStock(product, productStock) > 0;
+    }
+
+    @Named("variantAvailableStock")
+    default Integer variantAvailableStock(ProductVariant variant, @Context Map<Long, Integer> variantStock) {
+        return variantStock.getOrDefault(variant.getId(), variant.getStockQuantity());
     }
 
     @Named("variantInStock")
-    default Boolean variantInStock(ProductVariant variant) {
-        return variant.isInStock();
+    default Boolean variantInStock(ProductVariant variant, @Context Map<Long, Integer> variantStock) {
+        return variantAvailableStock(variant, variantStock) > 0;
     }
 }
-
@@ -0,0 +1,125 @@
+package fpt.kiennt169.e_commerce.repositories;
+
+import fpt.kiennt169.e_commerce.entities.CartItem;
+import fpt.kiennt169.e_commerce.repositories.projections.CartLine;
+import fpt.kiennt169.e_commerce.repositories.projections.CartLineRef;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CartItemRepository extends JpaRepository<CartItem, Long> {
+
+    String REFRESH_SNAPSHOTS = "UPDATE cart_items ci SET unit_price = pv.price, variant_sku = pv.sku, " +
+            "variant_size = pv.size, variant_color = pv.color, product_id = p.id, product_name = p.name, " +
+            "product_image_url = (SELECT pi.image_url FROM product_images pi WHERE pi.product_id = p.id " +
+            "ORDER BY pi.is_thumbnail DESC, pi.id LIMIT 1) " +
+            "FROM product_variants pv JOIN products p ON p.id = pv.product_id " +
+            "WHERE ci.product_variant_id = pv.id ";
+
+    String SNAPSHOT_CHANGED = "AND (ci.unit_price IS DISTINCT FROM pv.price " +
+            "OR ci.variant_sku IS DISTINCT FROM pv.sku OR ci.variant_size IS DISTINCT FROM pv.size " +
+            "OR ci.variant_color IS DISTINCT FROM pv.color OR ci.product_id IS DISTINCT FROM p.id " +
+            "OR ci.product_name IS DISTINCT FROM p.name " +
+            "OR ci.product_image_url IS DISTINCT FROM (SELECT pi.image_url FROM product_images pi " +
+            "WHERE pi.product_id = p.id ORDER BY pi.is_thumbnail DESC, pi.id LIMIT 1)) " +
+            "RETURNING ci.cart_id";
+
+    Optional<CartItem> findByIdAndCartId(Long id, String cartId);
+
+    List<CartItem> findByCartIdAndProductVariantIdIn(String cartId, Collection<Long> variantIds);
+
+    List<CartItem> findByCartIdOrderById(String cartId);
+
+    /**
+     * Move all items of one cart into another in one statement, summing the quantities of variants
+     * that are in both. Every merged line gets the current catalog snapshot, falling back to the
+     * source line's own snapshot for a value the catalog no longer has.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO cart_items (cart_id, product_variant_id, quantity, unit_price, variant_sku, " +
+                   "variant_size, variant_color, product_id, product_name, product_image_url, created_at, updated_at) " +
+                   "SELECT :targetCartId, ci.product_variant_id, ci.quantity, " +
+                   "COALESCE(pv.price, ci.unit_price), COALESCE(pv.sku, ci.variant_sku), " +
+                   "COALESCE(pv.size, ci.variant_size), COALESCE(pv.color, ci.variant_color), " +
+                   "COALESCE(p.id, ci.product_id), COALESCE(p.name, ci.product_name), " +
+                   "COALESCE((SELECT pi.image_url FROM product_images pi WHERE pi.product_id = p.id " +
+                   "ORDER BY pi.is_thumbnail DESC, pi.id LIMIT 1), ci.product_image_url), :now, :now " +
+                   "FROM cart_items ci JOIN product_variants pv ON pv.id = ci.product_variant_id " +
+                   "LEFT JOIN products p ON p.id = pv.product_id " +
+                   "WHERE ci.cart_id = :sourceCartId " +
+                   "ON CONFLICT ON CONSTRAINT uk_cart_variant DO UPDATE SET " +
+                   "quantity = cart_items.quantity + EXCLUDED.quantity, unit_price = EXCLUDED.unit_price, " +
+                   "variant_sku = EXCLUDED.variant_sku, variant_size = EXCLUDED.variant_size, " +
+                   "variant_color = EXCLUDED.variant_color, product_id = EXCLUDED.product_id, " +
+                   "product_name = EXCLUDED.product_name, product_image_url = EXCLUDED.product_image_url, " +
+                   "updated_at = EXCLUDED.updated_at",
+           nativeQuery = true)
+    int mergeInto(@Param("sourceCartId") String sourceCartId, @Param("targetCartId") String targetCartId,
+                  @Param("now") LocalDateTime now);
+
+    @Query("SELECT ci.id AS id, ci.productVariant.id AS variantId, ci.quantity AS quantity " +
+           "FROM CartItem ci WHERE ci.cart.user.id = :userId ORDER BY ci.id")
+    List<CartLineRef> findLineRefsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT ci.id AS id, ci.productVariant.id AS variantId, ci.quantity AS quantity " +
+           "FROM CartItem ci WHERE ci.cart.sessionId = :sessionId ORDER BY ci.id")
+    List<CartLineRef> findLineRefsBySessionId(@Param("sessionId") String sessionId);
+
+    @Query(value = "SELECT ci.quantity AS \"quantity\", ci.quantity * COALESCE(ci.unit_price, pv.price) AS \"subtotal\" " +
+                   "FROM cart_items ci JOIN product_variants pv ON pv.id = ci.product_variant_id " +
+                   "WHERE ci.cart_id = :cartId AND ci.product_variant_id = :variantId",
+           nativeQuery = true)
+    Optional<CartLine> findLine(@Param("cartId") String cartId, @Param("variantId") Long variantId);
+
+    /**
+     * Add the quantity to the cart's line of the variant, creating it if missing, in one statement.
+     * The line snapshot is re-taken. Returns the line id, or nothing when the summed quantity
+     * would exceed :maxQuantity (the line grew concurrently).
+     */
+    @Query(value = "INSERT INTO cart_items (cart_id, product_variant_id, quantity, unit_price, variant_sku, " +
+                   "variant_size, variant_color, product_id, product_name, product_image_url, created_at, updated_at) " +
+                   "VALUES (:cartId, :variantId, :quantity, :unitPrice, :sku, :size, :color, :productId, " +
+                   ":productName, :imageUrl, :now, :now) " +
+                   "ON CONFLICT ON CONSTRAINT uk_cart_variant DO UPDATE SET " +
+                   "quantity = cart_items.quantity + EXCLUDED.quantity, unit_price = EXCLUDED.unit_price, " +
+                   "variant_sku = EXCLUDED.variant_sku, variant_size = EXCLUDED.variant_size, " +
+                   "variant_color = EXCLUDED.variant_color, product_id = EXCLUDED.product_id, " +
+                   "product_name = EXCLUDED.product_name, product_image_url = EXCLUDED.product_image_url, " +
+                   "updated_at = EXCLUDED.updated_at " +
+                   "WHERE cart_items.quantity + EXCLUDED.quantity <= :maxQuantity " +
+                   "RETURNING id",
+           nativeQuery = true)
+    List<Long> upsertLine(@Param("cartId") String cartId, @Param("variantId") Long variantId,
+                          @Param("quantity") int quantity, @Param("maxQuantity") int maxQuantity,
+                          @Param("unitPrice") BigDecimal unitPrice, @Param("sku") String sku,
+                          @Param("size") String size, @Param("color") String color,
+                          @Param("productId") Long productId, @Param("productName") String productName,
+                          @Param("imageUrl") String imageUrl, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM CartItem ci WHERE ci.cart.id = :cartId")
+    int deleteByCartId(@Param("cartId") String cartId);
+
+    @Modifying
+    @Query("DELETE FROM CartItem ci WHERE ci.cart.id IN :cartIds")
+    int deleteByCartIds(@Param("cartIds") Collection<String> cartIds);
+
+    /**
+     * Re-take the line snapshots of the given products where they differ from the catalog,
+     * returns the id of the cart of every changed line
+     */
+    @Query(value = REFRESH_SNAPSHOTS + "AND p.id IN (:productIds) " + SNAPSHOT_CHANGED, nativeQuery = true)
+    List<String> refreshSnapshots(@Param("productIds") Collection<Long> productIds);
+
+    @Query(value = REFRESH_SNAPSHOTS + "AND ci.cart_id IN (:cartIds) " + SNAPSHOT_CHANGED, nativeQuery = true)
+    List<String> refreshSnapshotsOfCarts(@Param("cartIds") Collection<String> cartIds);
+}
@@ -1,19 +1,173 @@
 package fpt.kiennt169.e_commerce.repositories;
 
 import fpt.kiennt169.e_commerce.entities.Cart;
+import fpt.kiennt169.e_commerce.repositories.projections.DuplicateCartRef;
+import fpt.kiennt169.e_commerce.repositories.projections.GuestCartRef;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CartRepository extends JpaRepository<Cart, String> {
     
-    @EntityGraph(attributePaths = {"items", "items.productVariant", "items.productVariant.product"})
+    /**
+     * Cart with its lines - enough for the cart view, which reads the line snapshots only
+     */
+    @EntityGraph(attributePaths = {"items"})
     Optional<Cart> findByUserId(Long userId);
     
-    @EntityGraph(attributePaths = {"items", "items.productVariant", "items.productVariant.product"})
+    @EntityGraph(attributePaths = {"items"})
     Optional<Cart> findBySessionId(String sessionId);
+
+    /**
+     * Cart with live variant and product data, for checkout and order placement
+     */
+    @EntityGraph(attributePaths = {"items", "items.productVariant", "items.productVariant.product"})
+    Optional<Cart> findWithVariantsByUserId(Long userId);
+
+    @EntityGraph(attributePaths = {"items", "items.productVariant", "items.productVariant.product"})
+    Optional<Cart> findWithVariantsBySessionId(String sessionId);
+
+    /**
+     * Cart row only, for mutations that touch a single item
+     */
+    @Query("SELECT c FROM Cart c WHERE c.user.id = :userId")
+    Optional<Cart> findHeaderByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT c FROM Cart c WHERE c.sessionId = :sessionId")
+    Optional<Cart> findHeaderBySessionId(@Param("sessionId") String sessionId);
+
+    @Query("SELECT c.id FROM Cart c WHERE c.user.id = :userId")
+    Optional<String> findIdByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT c.id FROM Cart c WHERE c.sessionId = :sessionId AND c.user IS NULL")
+    Optional<String> findGuestCartId(@Param("sessionId") String sessionId);
+
+    /**
+     * Lock the carts in id order, so two merges touching the same carts cannot deadlock
+     */
+    @Query(value = "SELECT id FROM carts WHERE id IN (:ids) ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<String> lockByIds(@Param("ids") Collection<String> ids);
+
+    /**
+     * Hand a guest cart over to a user that has no cart yet
+     */
+    @Modifying
+    @Query(value = "UPDATE carts SET user_id = :userId, session_id = NULL, updated_at = :now, " +
+                   "version = version + 1 WHERE id = :cartId",
+           nativeQuery = true)
+    int assignToUser(@Param("cartId") String cartId, @Param("userId") Long userId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE carts c SET " +
+                   "total_items = COALESCE((SELECT SUM(ci.quantity) FROM cart_items ci WHERE ci.cart_id = c.id), 0), " +
+                   "total_price = COALESCE((SELECT SUM(ci.quantity * COALESCE(ci.unit_price, pv.price)) FROM cart_items ci " +
+                   "JOIN product_variants pv ON pv.id = ci.product_variant_id WHERE ci.cart_id = c.id), 0), " +
+                   "updated_at = :now, version = c.version + 1 WHERE c.id = :cartId",
+           nativeQuery = true)
+    int recalculateTotals(@Param("cartId") String cartId, @Param("now") LocalDateTime now);
+
+    /**
+     * Re-derive the running totals of the given carts after their line snapshots changed
+     */
+    @Modifying
+    @Query(value = "UPDATE carts c SET " +
+                   "total_items = COALESCE((SELECT SUM(ci.quantity) FROM cart_items ci WHERE ci.cart_id = c.id), 0), " +
+                   "total_price = COALESCE((SELECT SUM(ci.quantity * ci.unit_price) FROM cart_items ci " +
+                   "WHERE ci.cart_id = c.id), 0), version = c.version + 1 WHERE c.id IN (:cartIds)",
+           nativeQuery = true)
+    int recalculateTotals(@Param("cartIds") Collection<String> cartIds);
+
+    @Modifying
+    @Query("DELETE FROM Cart c WHERE c.id = :cartId")
+    int deleteCart(@Param("cartId") String cartId);
+
+    /**
+     * Lock up to :limit guest carts that neither the cart nor any of its items changed since :cutoff.
+     * Carts locked by live traffic are skipped. Filters and orders on the bare updated_at (set on insert by auditing
+     * and by every cart write) so idx_carts_updated serves the batch instead of a scan and sort of all carts.
+     */
+    @Query(value = "SELECT c.id AS \"id\", c.session_id AS \"sessionId\" FROM carts c " +
+                   "WHERE c.user_id IS NULL AND c.updated_at < :cutoff " +
+                   "AND NOT EXISTS (SELECT 1 FROM cart_items ci WHERE ci.cart_id = c.id " +
+                   "AND COALESCE(ci.updated_at, ci.created_at) >= :cutoff) " +
+                   "ORDER BY c.updated_at LIMIT :limit FOR UPDATE OF c SKIP LOCKED",
+           nativeQuery = true)
+    List<GuestCartRef> lockAbandonedGuestCarts(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM Cart c WHERE c.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<String> ids);
+
+    @Query("SELECT c.id FROM Cart c WHERE c.id > :afterId ORDER BY c.id")
+    List<String> findIdsAfter(@Param("afterId") String afterId, Limit limit);
+
+    /**
+     * Re-derive the running totals of the given carts where they do not match their items
+     */
+    @Modifying
+    @Query(value = "UPDATE carts c SET total_items = t.total_items, total_price = t.total_price, " +
+                   "version = c.version + 1 " +
+                   "FROM (SELECT c2.id, COALESCE(SUM(ci.quantity), 0) AS total_items, " +
+                   "COALESCE(SUM(ci.quantity * COALESCE(ci.unit_price, pv.price)), 0) AS total_price FROM carts c2 " +
+                   "LEFT JOIN cart_items ci ON ci.cart_id = c2.id " +
+                   "LEFT JOIN product_variants pv ON pv.id = ci.product_variant_id " +
+                   "WHERE c2.id IN (:cartIds) GROUP BY c2.id) t " +
+                   "WHERE c.id = t.id AND (c.total_items IS DISTINCT FROM t.total_items " +
+                   "OR c.total_price IS DISTINCT FROM t.total_price)",
+           nativeQuery = true)
+    int resyncTotals(@Param("cartIds") Collection<String> cartIds);
+
+    @Query(value = "SELECT conname FROM pg_constraint WHERE conrelid = 'carts'::regclass AND contype = 'u'",
+           nativeQuery = true)
+    List<String> findUniqueConstraintNames();
+
+    /**
+     * Keep out concurrent cart writes while duplicates are merged and the unique constraints are added
+     */
+    @Modifying
+    @Query(value = "LOCK TABLE carts IN SHARE ROW EXCLUSIVE MODE", nativeQuery = true)
+    void lockTable();
+
+    /**
+     * Carts of users that own more than one cart, the most recently updated cart of each user first
+     */
+    @Query(value = "SELECT c.id AS \"id\", c.user_id AS \"userId\", c.session_id AS \"sessionId\" FROM carts c " +
+                   "WHERE c.user_id IN (SELECT user_id FROM carts WHERE user_id IS NOT NULL " +
+                   "GROUP BY user_id HAVING COUNT(*) > 1) " +
+                   "ORDER BY c.user_id, c.updated_at DESC NULLS LAST, c.id",
+           nativeQuery = true)
+    List<DuplicateCartRef> findDuplicateUserCarts();
+
+    /**
+     * Carts of sessions that own more than one cart, a user cart and then the most recently updated cart first
+     */
+    @Query(value = "SELECT c.id AS \"id\", c.user_id AS \"userId\", c.session_id AS \"sessionId\" FROM carts c " +
+                   "WHERE c.session_id IN (SELECT session_id FROM carts WHERE session_id IS NOT NULL " +
+                   "GROUP BY session_id HAVING COUNT(*) > 1) " +
+                   "ORDER BY c.session_id, c.user_id IS NULL, c.updated_at DESC NULLS LAST, c.id",
+           nativeQuery = true)
+    List<DuplicateCartRef> findDuplicateSessionCarts();
+
+    @Modifying
+    @Query(value = "UPDATE carts SET session_id = NULL, version = version + 1 WHERE id = :cartId", nativeQuery = true)
+    int clearSession(@Param("cartId") String cartId);
+
+    @Modifying
+    @Query(value = "ALTER TABLE carts ADD CONSTRAINT uk_carts_user UNIQUE (user_id)", nativeQuery = true)
+    void addUserUniqueConstraint();
+
+    @Modifying
+    @Query(value = "ALTER TABLE carts ADD CONSTRAINT uk_carts_session UNIQUE (session_id)", nativeQuery = true)
+    void addSessionUniqueConstraint();
     
 }
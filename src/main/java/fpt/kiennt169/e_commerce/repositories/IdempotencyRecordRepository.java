@@ -0,0 +1,42 @@
+package fpt.kiennt169.e_commerce.repositories;
+
+import fpt.kiennt169.e_commerce.entities.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    @Query("SELECT r FROM IdempotencyRecord r WHERE r.id = :id AND r.expiresAt > :now")
+    Optional<IdempotencyRecord> findLive(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    /**
+     * Claim a key for the current transaction, taking over an expired row. Returns 0 when the key is live:
+     * if its owner has not committed yet the insert waits for it, so the owner's response is visible afterwards.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (id, request_hash, created_at, expires_at) " +
+                   "VALUES (:id, :requestHash, :now, :expiresAt) " +
+                   "ON CONFLICT (id) DO UPDATE SET request_hash = EXCLUDED.request_hash, response = NULL, " +
+                   "created_at = EXCLUDED.created_at, expires_at = EXCLUDED.expires_at " +
+                   "WHERE idempotency_keys.expires_at <= EXCLUDED.created_at",
+           nativeQuery = true)
+    int claim(@Param("id") String id, @Param("requestHash") String requestHash,
+              @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query(value = "UPDATE idempotency_keys SET response = :response WHERE id = :id", nativeQuery = true)
+    int complete(@Param("id") String id, @Param("response") String response);
+
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE id IN (" +
+                   "SELECT id FROM idempotency_keys WHERE expires_at <= :now LIMIT :limit FOR UPDATE SKIP LOCKED)",
+           nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now, @Param("limit") int limit);
+}
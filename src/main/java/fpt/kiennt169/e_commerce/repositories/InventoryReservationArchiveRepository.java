@@ -0,0 +1,32 @@
+package fpt.kiennt169.e_commerce.repositories;
+
+import fpt.kiennt169.e_commerce.entities.InventoryReservationArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface InventoryReservationArchiveRepository extends JpaRepository<InventoryReservationArchive, String> {
+
+    /**
+     * Move at most :limit terminal reservations that expired before :cutoff into the archive table
+     * (delete + insert in one statement). Returns the number of rows moved.
+     */
+    @Modifying
+    @Query(value = "WITH moved AS (" +
+                   "DELETE FROM inventory_reservations WHERE id IN (" +
+                   "SELECT id FROM inventory_reservations " +
+                   "WHERE status IN ('COMPLETED', 'CANCELLED', 'EXPIRED') AND expiry_time < :cutoff " +
+                   "LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING id, product_variant_id, quantity, session_id, bucket_no, expiry_time, status, created_at, updated_at) " +
+                   "INSERT INTO inventory_reservations_archive " +
+                   "(id, product_variant_id, quantity, session_id, bucket_no, expiry_time, status, created_at, updated_at, archived_at) " +
+                   "SELECT id, product_variant_id, quantity, session_id, bucket_no, expiry_time, status, created_at, updated_at, :now " +
+                   "FROM moved",
+           nativeQuery = true)
+    int archiveTerminal(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit, @Param("now") LocalDateTime now);
+}
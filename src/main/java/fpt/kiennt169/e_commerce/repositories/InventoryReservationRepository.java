@@ -2,6 +2,9 @@ package fpt.kiennt169.e_commerce.repositories;
 
 import fpt.kiennt169.e_commerce.entities.InventoryReservation;
 import fpt.kiennt169.e_commerce.enums.ReservationStatus;
+import fpt.kiennt169.e_commerce.repositories.projections.ReleasedReservations;
+import fpt.kiennt169.e_commerce.repositories.projections.ReservationDeadline;
+import fpt.kiennt169.e_commerce.repositories.projections.VariantQuantity;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
@@ -11,26 +14,103 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface InventoryReservationRepository extends JpaRepository<InventoryReservation, String> {
     
-    @Modifying
-    @Query("UPDATE InventoryReservation ir SET ir.status = 'CANCELLED' " +
-           "WHERE ir.sessionId = :sessionId AND ir.status = 'ACTIVE'")
-    int cancelReservationsBySessionId(@Param("sessionId") String sessionId);
+    /**
+     * Cancel the ACTIVE reservations of a session, locked in id order, and return what was cancelled.
+     * Rows a concurrent sweep or checkout already moved out of ACTIVE are not returned.
+     */
+    @Query(value = "WITH claimed AS (" +
+                   "SELECT id FROM inventory_reservations " +
+                   "WHERE session_id = :sessionId AND status = 'ACTIVE' ORDER BY id FOR UPDATE), " +
+                   "cancelled AS (" +
+                   "UPDATE inventory_reservations ir SET status = 'CANCELLED', updated_at = :now " +
+                   "FROM claimed c WHERE ir.id = c.id AND ir.status = 'ACTIVE' " +
+                   "RETURNING ir.product_variant_id, ir.bucket_no, ir.quantity) " +
+                   "SELECT product_variant_id AS \"variantId\", bucket_no AS \"bucketNo\", " +
+                   "SUM(quantity) AS \"quantity\", COUNT(*) AS \"reservations\" " +
+                   "FROM cancelled GROUP BY product_variant_id, bucket_no",
+           nativeQuery = true)
+    List<ReleasedReservations> cancelSession(@Param("sessionId") String sessionId, @Param("now") LocalDateTime now);
     
     @Lock(LockModeType.PESSIMISTIC_READ)
     @Query("SELECT COALESCE(SUM(ir.quantity), 0) FROM InventoryReservation ir " +
            "WHERE ir.productVariant.id = :variantId AND ir.status = 'ACTIVE'")
     int getTotalReservedQuantity(@Param("variantId") Long variantId);
+
+    @Query("SELECT ir.productVariant.id AS variantId, SUM(ir.quantity) AS quantity FROM InventoryReservation ir " +
+           "WHERE ir.productVariant.id IN :variantIds AND ir.status = 'ACTIVE' GROUP BY ir.productVariant.id")
+    List<VariantQuantity> sumActiveQuantitiesByVariantIds(@Param("variantIds") Collection<Long> variantIds);
+
+    @Query("SELECT ir.productVariant.id AS variantId, SUM(ir.quantity) AS quantity FROM InventoryReservation ir " +
+           "WHERE ir.sessionId = :sessionId AND ir.status = 'ACTIVE' GROUP BY ir.productVariant.id")
+    List<VariantQuantity> sumActiveQuantitiesBySessionId(@Param("sessionId") String sessionId);
     
     List<InventoryReservation> findBySessionIdAndStatus(String sessionId, ReservationStatus status);
     
     long countBySessionIdAndStatus(String sessionId, ReservationStatus status);
-    
-    @Query("SELECT ir FROM InventoryReservation ir " +
-           "WHERE ir.expiryTime < :currentTime AND ir.status = 'ACTIVE'")
-    List<InventoryReservation> findExpiredReservations(@Param("currentTime") LocalDateTime currentTime);
+
+    /**
+     * Complete all ACTIVE reservations of a session and deduct them from stock in one statement.
+     * Reservations and then variants are locked in id order; returns the deduction per variant.
+     */
+    @Query(value = "WITH claimed AS (" +
+                   "SELECT id FROM inventory_reservations " +
+                   "WHERE session_id = :sessionId AND status = 'ACTIVE' ORDER BY id FOR UPDATE), " +
+                   "completed AS (" +
+                   "UPDATE inventory_reservations ir SET status = 'COMPLETED', updated_at = :now " +
+                   "FROM claimed c WHERE ir.id = c.id " +
+                   "RETURNING ir.product_variant_id, ir.quantity), " +
+                   "totals AS (" +
+                   "SELECT product_variant_id, SUM(quantity) AS quantity FROM completed GROUP BY product_variant_id), " +
+                   "locked AS (" +
+                   "SELECT pv.id FROM product_variants pv " +
+                   "WHERE pv.id IN (SELECT product_variant_id FROM totals) ORDER BY pv.id FOR UPDATE) " +
+                   "UPDATE product_variants pv SET " +
+                   "stock_quantity = pv.stock_quantity - t.quantity, " +
+                   "reserved_quantity = pv.reserved_quantity - t.quantity, " +
+                   "updated_at = :now " +
+                   "FROM totals t WHERE pv.id = t.product_variant_id AND pv.id IN (SELECT id FROM locked) " +
+                   "RETURNING pv.id AS \"variantId\", t.quantity AS \"quantity\"",
+           nativeQuery = true)
+    List<VariantQuantity> confirmSession(@Param("sessionId") String sessionId, @Param("now") LocalDateTime now);
+
+    /**
+     * Expire at most :limit overdue reservations in one statement. Rows locked by a concurrent
+     * checkout or sweep are skipped and picked up by a later pass.
+     */
+    @Query(value = "WITH expired AS (" +
+                   "UPDATE inventory_reservations SET status = 'EXPIRED', updated_at = :now " +
+                   "WHERE id IN (SELECT id FROM inventory_reservations " +
+                   "WHERE status = 'ACTIVE' AND expiry_time < :now " +
+                   "ORDER BY expiry_time LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING product_variant_id, bucket_no, quantity) " +
+                   "SELECT product_variant_id AS \"variantId\", bucket_no AS \"bucketNo\", " +
+                   "SUM(quantity) AS \"quantity\", COUNT(*) AS \"reservations\" " +
+                   "FROM expired GROUP BY product_variant_id, bucket_no",
+           nativeQuery = true)
+    List<ReleasedReservations> expireOverdue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * Expire the given reservations once they are due. Rows locked by an order being placed are skipped,
+     * the sweep picks them up if that order rolls back.
+     */
+    @Query(value = "WITH expired AS (" +
+                   "UPDATE inventory_reservations SET status = 'EXPIRED', updated_at = :now " +
+                   "WHERE id IN (SELECT id FROM inventory_reservations " +
+                   "WHERE id IN (:ids) AND status = 'ACTIVE' AND expiry_time <= :now " +
+                   "FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING product_variant_id, bucket_no, quantity) " +
+                   "SELECT product_variant_id AS \"variantId\", bucket_no AS \"bucketNo\", " +
+                   "SUM(quantity) AS \"quantity\", COUNT(*) AS \"reservations\" " +
+                   "FROM expired GROUP BY product_variant_id, bucket_no",
+           nativeQuery = true)
+    List<ReleasedReservations> expireDue(@Param("ids") Collection<String> ids, @Param("now") LocalDateTime now);
+
+    @Query("SELECT ir.id AS id, ir.expiryTime AS expiryTime FROM InventoryReservation ir WHERE ir.status = 'ACTIVE'")
+    List<ReservationDeadline> findActiveDeadlines();
 }
@@ -1,18 +1,85 @@
 package fpt.kiennt169.e_commerce.repositories;
 
 import fpt.kiennt169.e_commerce.entities.Order;
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+import fpt.kiennt169.e_commerce.repositories.projections.OrderStatusRef;
+import fpt.kiennt169.e_commerce.repositories.projections.OrderSummary;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface OrderRepository extends JpaRepository<Order, String> {
     
-    @EntityGraph(attributePaths = {"items"})
-    Page<Order> findByUserIdOrderByCreatedAtDesc(Long userId, Pageable pageable);
-    
-    Page<Order> findAllByOrderByCreatedAtDesc(Pageable pageable);
+    String SUMMARY = "SELECT o.id AS id, o.customerName AS customerName, o.totalAmount AS totalAmount, " +
+                     "o.status AS status, o.createdAt AS createdAt, " +
+                     "(SELECT COALESCE(SUM(oi.quantity), 0) FROM OrderItem oi WHERE oi.order = o) AS totalItems " +
+                     "FROM Order o ";
+
+    /**
+     * One page of a user's orders as list rows: the page is limited in SQL and no items are fetched
+     */
+    @Query(value = SUMMARY + "WHERE o.user.id = :userId ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.user.id = :userId")
+    Page<OrderSummary> findUserOrderSummaries(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(value = SUMMARY + "ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o")
+    Page<OrderSummary> findOrderSummaries(Pageable pageable);
+
+    @Query(SUMMARY + "WHERE o.user.id = :userId ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderSummary> findUserOrdersFirst(@Param("userId") Long userId, Limit limit);
+
+    /**
+     * Keyset page after (createdAt, id) in (created_at DESC, id DESC) order. The redundant
+     * created_at <= :createdAt bound lets the created_at indexes seek straight to the cursor.
+     */
+    @Query(SUMMARY + "WHERE o.user.id = :userId " +
+           "AND o.createdAt <= :createdAt AND (o.createdAt < :createdAt OR o.id < :id) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderSummary> findUserOrdersAfter(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("id") String id, Limit limit);
+
+    @Query(SUMMARY + "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderSummary> findOrdersFirst(Limit limit);
+
+    @Query(SUMMARY +
+           "WHERE o.createdAt <= :createdAt AND (o.createdAt < :createdAt OR o.id < :id) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderSummary> findOrdersAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") String id, Limit limit);
+
+    @Query(SUMMARY + "WHERE o.status = :status ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderSummary> findOrdersByStatusFirst(@Param("status") OrderStatus status, Limit limit);
+
+    @Query(SUMMARY + "WHERE o.status = :status " +
+           "AND o.createdAt <= :createdAt AND (o.createdAt < :createdAt OR o.id < :id) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderSummary> findOrdersByStatusAfter(@Param("status") OrderStatus status, @Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") String id, Limit limit);
+
+    @EntityGraph(attributePaths = {"items", "items.productVariant", "items.productVariant.product"})
+    List<Order> findWithItemsByIdIn(Collection<String> ids);
+
+    @Query("SELECT o.id AS id, o.status AS status FROM Order o WHERE o.id IN :ids")
+    List<OrderStatusRef> findStatusesByIdIn(@Param("ids") Collection<String> ids);
+
+    /**
+     * Move the given orders from one status to another; orders no longer in :fromStatus are left alone
+     * and missing from the returned ids
+     */
+    @Query(value = "UPDATE orders SET status = :toStatus, updated_at = :now " +
+                   "WHERE id IN (:ids) AND status = :fromStatus RETURNING id",
+           nativeQuery = true)
+    List<String> transitionStatus(@Param("ids") Collection<String> ids, @Param("fromStatus") String fromStatus,
+                                  @Param("toStatus") String toStatus, @Param("now") LocalDateTime now);
     
 }
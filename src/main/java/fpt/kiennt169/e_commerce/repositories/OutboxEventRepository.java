@@ -0,0 +1,75 @@
+package fpt.kiennt169.e_commerce.repositories;
+
+import fpt.kiennt169.e_commerce.entities.OutboxEvent;
+import fpt.kiennt169.e_commerce.repositories.projections.ClaimedOutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Claim at most :limit due events until :leaseUntil and count the attempt. Events claimed by another
+     * dispatcher are skipped; an event whose dispatcher died becomes due again when its lease runs out.
+     */
+    @Query(value = "UPDATE outbox_events SET next_attempt_at = :leaseUntil, attempts = attempts + 1, updated_at = :now " +
+                   "WHERE id IN (SELECT id FROM outbox_events " +
+                   "WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+                   "ORDER BY next_attempt_at, id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING id AS \"id\", type AS \"type\", aggregate_id AS \"aggregateId\", " +
+                   "payload AS \"payload\", attempts AS \"attempts\"",
+           nativeQuery = true)
+    List<ClaimedOutboxEvent> claimDue(@Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil,
+                                      @Param("limit") int limit);
+
+    /**
+     * Record one event of the given type per existing order, for set-based order changes
+     */
+    @Modifying
+    @Query(value = "INSERT INTO outbox_events (type, aggregate_id, payload, status, attempts, next_attempt_at, " +
+                   "created_at, updated_at) " +
+                   "SELECT :type, o.id, :payload, 'PENDING', 0, :now, :now, :now FROM orders o WHERE o.id IN (:orderIds)",
+           nativeQuery = true)
+    int insertForOrders(@Param("type") String type, @Param("orderIds") Collection<String> orderIds,
+                        @Param("payload") String payload, @Param("now") LocalDateTime now);
+
+    /**
+     * Outcome updates only apply while the event still carries the lease of the claim that sent it,
+     * so a dispatcher that overran its lease cannot overwrite the claim of another one
+     */
+    @Modifying
+    @Query(value = "UPDATE outbox_events SET status = 'SENT', sent_at = :now, last_error = NULL, updated_at = :now " +
+                   "WHERE id IN (:ids) AND status = 'PENDING' AND next_attempt_at = :leaseUntil",
+           nativeQuery = true)
+    int markSent(@Param("ids") Collection<Long> ids, @Param("leaseUntil") LocalDateTime leaseUntil,
+                 @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE outbox_events SET next_attempt_at = :nextAttemptAt, last_error = :error, updated_at = :now " +
+                   "WHERE id = :id AND status = 'PENDING' AND next_attempt_at = :leaseUntil",
+           nativeQuery = true)
+    int reschedule(@Param("id") Long id, @Param("leaseUntil") LocalDateTime leaseUntil,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("error") String error,
+                   @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE outbox_events SET status = 'FAILED', last_error = :error, updated_at = :now " +
+                   "WHERE id = :id AND status = 'PENDING' AND next_attempt_at = :leaseUntil",
+           nativeQuery = true)
+    int markFailed(@Param("id") Long id, @Param("leaseUntil") LocalDateTime leaseUntil, @Param("error") String error,
+                   @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "DELETE FROM outbox_events WHERE id IN (" +
+                   "SELECT id FROM outbox_events WHERE status = 'SENT' AND sent_at < :cutoff " +
+                   "LIMIT :limit FOR UPDATE SKIP LOCKED)",
+           nativeQuery = true)
+    int deleteSent(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+}
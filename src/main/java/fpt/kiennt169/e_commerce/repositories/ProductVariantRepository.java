@@ -1,13 +1,20 @@
 package fpt.kiennt169.e_commerce.repositories;
 
 import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.repositories.projections.ProductAvailability;
+import fpt.kiennt169.e_commerce.repositories.projections.VariantStockLevel;
 import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -16,5 +23,84 @@ public interface ProductVariantRepository extends JpaRepository<ProductVariant,
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT pv FROM ProductVariant pv WHERE pv.id = :id")
     Optional<ProductVariant> findByIdWithLock(@Param("id") Long id);
+
+    /**
+     * Variant with what a cart line snapshot needs
+     */
+    @EntityGraph(attributePaths = {"product", "product.images"})
+    Optional<ProductVariant> findWithProductById(Long id);
+
+    @EntityGraph(attributePaths = {"product", "product.images"})
+    List<ProductVariant> findWithProductByIdIn(Collection<Long> ids);
+
+    /**
+     * Stock levels as seen by buyers: stock parked in stock buckets is not counted as reserved
+     */
+    @Query("SELECT pv.id AS variantId, pv.stockQuantity AS stockQuantity, " +
+           "pv.reservedQuantity - COALESCE((SELECT SUM(b.available) FROM StockBucket b WHERE b.variant = pv), 0) " +
+           "AS reservedQuantity FROM ProductVariant pv")
+    List<VariantStockLevel> findAllStockLevels();
+
+    @Query("SELECT pv.id AS variantId, pv.stockQuantity AS stockQuantity, " +
+           "pv.reservedQuantity - COALESCE((SELECT SUM(b.available) FROM StockBucket b WHERE b.variant = pv), 0) " +
+           "AS reservedQuantity FROM ProductVariant pv WHERE pv.id IN :ids")
+    List<VariantStockLevel> findStockLevels(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT pv.product.id AS productId, SUM(pv.stockQuantity - pv.reservedQuantity) + " +
+           "COALESCE((SELECT SUM(b.available) FROM StockBucket b WHERE b.variant.product.id = pv.product.id), 0) " +
+           "AS available FROM ProductVariant pv WHERE pv.product.id IN :productIds GROUP BY pv.product.id")
+    List<ProductAvailability> sumAvailableByProductIds(@Param("productIds") Collection<Long> productIds);
+
+    @Query("SELECT pv.stockBuckets FROM ProductVariant pv WHERE pv.id = :id")
+    Optional<Integer> findStockBuckets(@Param("id") Long id);
+
+    @Query("SELECT pv.id FROM ProductVariant pv WHERE pv.id IN :ids AND pv.stockBuckets > 0")
+    List<Long> findBucketedIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE ProductVariant pv SET pv.stockBuckets = :buckets WHERE pv.id = :id")
+    int updateStockBuckets(@Param("id") Long id, @Param("buckets") int buckets);
+
+    /**
+     * Lock the variants in ascending id order, so concurrent multi-item reservations cannot deadlock.
+     * Returns the current column values rather than entities that may already be managed (and stale).
+     * NO KEY UPDATE still lets reservations that reference a locked variant be inserted.
+     */
+    @Query(value = "SELECT pv.id AS \"variantId\", pv.stock_quantity AS \"stockQuantity\", " +
+                   "pv.reserved_quantity AS \"reservedQuantity\" FROM product_variants pv " +
+                   "WHERE pv.id IN (:ids) ORDER BY pv.id FOR NO KEY UPDATE",
+           nativeQuery = true)
+    List<VariantStockLevel> lockStockLevels(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE ProductVariant pv SET pv.reservedQuantity = pv.reservedQuantity + :quantity " +
+           "WHERE pv.id = :id AND pv.stockQuantity - pv.reservedQuantity >= :quantity")
+    int tryReserve(@Param("id") Long id, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("UPDATE ProductVariant pv SET pv.reservedQuantity = pv.reservedQuantity + :delta WHERE pv.id = :id")
+    int adjustReservedQuantity(@Param("id") Long id, @Param("delta") int delta);
+
+    /**
+     * Lock the next :limit variants after :afterId in id order, for the reserved_quantity repair
+     */
+    @Query(value = "SELECT id FROM product_variants WHERE id > :afterId ORDER BY id LIMIT :limit FOR UPDATE",
+           nativeQuery = true)
+    List<Long> lockIdsAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * Re-derive reserved_quantity (ACTIVE reservations plus stock parked in buckets) of variants
+     * already locked by {@link #lockIdsAfter}, returning the ids that were off. Must run as a separate
+     * statement after the lock, so its snapshot includes every change committed before the lock was granted.
+     */
+    @Query(value = "UPDATE product_variants pv SET reserved_quantity = e.reserved, updated_at = :now " +
+                   "FROM (SELECT v.id, COALESCE(" +
+                   "(SELECT SUM(ir.quantity) FROM inventory_reservations ir " +
+                   "WHERE ir.product_variant_id = v.id AND ir.status = 'ACTIVE'), 0) + COALESCE(" +
+                   "(SELECT SUM(sb.available) FROM stock_buckets sb WHERE sb.variant_id = v.id), 0) AS reserved " +
+                   "FROM product_variants v WHERE v.id IN (:ids)) e " +
+                   "WHERE pv.id = e.id AND pv.reserved_quantity <> e.reserved RETURNING pv.id",
+           nativeQuery = true)
+    List<Long> resyncReservedQuantities(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
     
 }
@@ -0,0 +1,63 @@
+package fpt.kiennt169.e_commerce.repositories;
+
+import fpt.kiennt169.e_commerce.entities.StockBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StockBucketRepository extends JpaRepository<StockBucket, Long> {
+
+    List<StockBucket> findByVariantIdOrderByBucketNo(Long variantId);
+
+    /**
+     * Take the quantity from a random bucket that has enough left and is not locked by another reservation.
+     * Returns the bucket number, or nothing when every such bucket is busy or short.
+     */
+    @Query(value = "WITH taken AS (" +
+                   "UPDATE stock_buckets SET available = available - :quantity " +
+                   "WHERE id = (SELECT id FROM stock_buckets " +
+                   "WHERE variant_id = :variantId AND available >= :quantity " +
+                   "ORDER BY random() LIMIT 1 FOR UPDATE SKIP LOCKED) " +
+                   "AND available >= :quantity " +
+                   "RETURNING bucket_no) " +
+                   "SELECT bucket_no FROM taken",
+           nativeQuery = true)
+    List<Integer> takeFromAnyBucket(@Param("variantId") Long variantId, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("UPDATE StockBucket b SET b.available = b.available - :quantity " +
+           "WHERE b.variant.id = :variantId AND b.bucketNo = :bucketNo AND b.available >= :quantity")
+    int take(@Param("variantId") Long variantId, @Param("bucketNo") int bucketNo, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("UPDATE StockBucket b SET b.available = b.available + :quantity " +
+           "WHERE b.variant.id = :variantId AND b.bucketNo = :bucketNo")
+    int giveBack(@Param("variantId") Long variantId, @Param("bucketNo") int bucketNo, @Param("quantity") int quantity);
+
+    /**
+     * Lock all buckets of a variant (in bucket order) before they are redistributed
+     */
+    @Query(value = "SELECT * FROM stock_buckets WHERE variant_id = :variantId ORDER BY bucket_no FOR UPDATE",
+           nativeQuery = true)
+    List<StockBucket> lockByVariantId(@Param("variantId") Long variantId);
+
+    @Modifying
+    @Query("DELETE FROM StockBucket b WHERE b.variant.id = :variantId")
+    int deleteByVariant(@Param("variantId") Long variantId);
+
+    /**
+     * Bucketed variants with stock left outside the buckets, or with an empty bucket while another has plenty
+     */
+    @Query(value = "SELECT pv.id FROM product_variants pv JOIN stock_buckets sb ON sb.variant_id = pv.id " +
+                   "WHERE pv.stock_buckets > 0 " +
+                   "GROUP BY pv.id, pv.stock_quantity, pv.reserved_quantity " +
+                   "HAVING pv.stock_quantity > pv.reserved_quantity " +
+                   "OR (MIN(sb.available) = 0 AND MAX(sb.available) > 1)",
+           nativeQuery = true)
+    List<Long> findVariantsToRebalance();
+}
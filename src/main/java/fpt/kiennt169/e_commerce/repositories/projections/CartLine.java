@@ -0,0 +1,13 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+import java.math.BigDecimal;
+
+/**
+ * Quantity and line subtotal of a cart item
+ */
+public interface CartLine {
+
+    Integer getQuantity();
+
+    BigDecimal getSubtotal();
+}
@@ -0,0 +1,13 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+/**
+ * Id, variant and quantity of a cart item
+ */
+public interface CartLineRef {
+
+    Long getId();
+
+    Long getVariantId();
+
+    Integer getQuantity();
+}
@@ -0,0 +1,17 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+/**
+ * Outbox event claimed by a dispatcher, attempts includes the current one
+ */
+public interface ClaimedOutboxEvent {
+
+    Long getId();
+
+    String getType();
+
+    String getAggregateId();
+
+    String getPayload();
+
+    Integer getAttempts();
+}
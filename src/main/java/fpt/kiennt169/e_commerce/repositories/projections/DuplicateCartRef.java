@@ -0,0 +1,13 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+/**
+ * A cart that shares its user or session with another cart
+ */
+public interface DuplicateCartRef {
+
+    String getId();
+
+    Long getUserId();
+
+    String getSessionId();
+}
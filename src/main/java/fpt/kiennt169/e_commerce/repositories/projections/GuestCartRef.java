@@ -0,0 +1,11 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+/**
+ * Id and session of a guest cart
+ */
+public interface GuestCartRef {
+
+    String getId();
+
+    String getSessionId();
+}
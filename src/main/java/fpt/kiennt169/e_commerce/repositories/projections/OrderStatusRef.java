@@ -0,0 +1,13 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+
+/**
+ * Id and current status of an order
+ */
+public interface OrderStatusRef {
+
+    String getId();
+
+    OrderStatus getStatus();
+}
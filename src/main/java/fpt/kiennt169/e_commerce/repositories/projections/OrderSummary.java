@@ -0,0 +1,24 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Order list row, totalItems summed in SQL so no order items are loaded
+ */
+public interface OrderSummary {
+
+    String getId();
+
+    String getCustomerName();
+
+    BigDecimal getTotalAmount();
+
+    OrderStatus getStatus();
+
+    Long getTotalItems();
+
+    LocalDateTime getCreatedAt();
+}
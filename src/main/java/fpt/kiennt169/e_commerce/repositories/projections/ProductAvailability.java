@@ -0,0 +1,11 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+/**
+ * Stock available for sale (stock minus reserved) summed over a product's variants
+ */
+public interface ProductAvailability {
+
+    Long getProductId();
+
+    Long getAvailable();
+}
@@ -0,0 +1,15 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+/**
+ * Reservations released in one statement, grouped per product variant and stock bucket
+ */
+public interface ReleasedReservations {
+
+    Long getVariantId();
+
+    Integer getBucketNo();
+
+    Long getQuantity();
+
+    Long getReservations();
+}
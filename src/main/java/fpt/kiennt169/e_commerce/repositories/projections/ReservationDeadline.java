@@ -0,0 +1,13 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+import java.time.LocalDateTime;
+
+/**
+ * Id and expiry time of an active reservation
+ */
+public interface ReservationDeadline {
+
+    String getId();
+
+    LocalDateTime getExpiryTime();
+}
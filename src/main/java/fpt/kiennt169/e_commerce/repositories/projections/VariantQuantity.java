@@ -0,0 +1,11 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+/**
+ * Quantity aggregated per product variant
+ */
+public interface VariantQuantity {
+
+    Long getVariantId();
+
+    Long getQuantity();
+}
@@ -0,0 +1,14 @@
+package fpt.kiennt169.e_commerce.repositories.projections;
+
+/**
+ * Physical and reserved stock of a product variant.
+ * Whether stock held in stock buckets counts as reserved depends on the query.
+ */
+public interface VariantStockLevel {
+
+    Long getVariantId();
+
+    Integer getStockQuantity();
+
+    Integer getReservedQuantity();
+}
@@ -0,0 +1,100 @@
+package fpt.kiennt169.e_commerce.scheduler;
+
+import fpt.kiennt169.e_commerce.services.CartService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@Slf4j
+public class CartScheduler {
+
+    private final CartService cartService;
+    private final Timer reaperPassTimer;
+    private final Counter reapedCounter;
+
+    @Value("${cart.guest.reaper.enabled:true}")
+    private boolean reaperEnabled;
+
+    @Value("${cart.guest.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${cart.guest.reaper.batch-size:500}")
+    private int batchSize;
+
+    @Value("${cart.guest.reaper.pause-ms:100}")
+    private long pauseMillis;
+
+    @Value("${cart.snapshot.reconcile-batch-size:500}")
+    private int reconcileBatchSize;
+
+    public CartScheduler(CartService cartService, MeterRegistry meterRegistry) {
+        this.cartService = cartService;
+        this.reaperPassTimer = Timer.builder("cart.guest.reaper.pass")
+                .description("Duration of one abandoned guest cart batch")
+                .register(meterRegistry);
+        this.reapedCounter = Counter.builder("cart.guest.reaped")
+                .description("Abandoned guest carts deleted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Delete guest carts untouched for the retention period, one bounded batch per transaction
+     * with a short pause between batches so live cart traffic keeps the database
+     */
+    @Scheduled(cron = "${cart.guest.reaper.cron:0 0 4 * * *}")
+    public void deleteAbandonedGuestCarts() {
+        if (!reaperEnabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        log.debug("Deleting guest carts untouched since {}", cutoff);
+        try {
+            int deleted;
+            int total = 0;
+            do {
+                long start = System.nanoTime();
+                deleted = cartService.deleteAbandonedGuestCarts(cutoff, batchSize);
+                reaperPassTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                reapedCounter.increment(deleted);
+                total += deleted;
+                if (deleted >= batchSize && pauseMillis > 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            } while (deleted >= batchSize);
+
+            if (total > 0) {
+                log.info("Deleted {} abandoned guest carts", total);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error deleting abandoned guest carts", e);
+        }
+    }
+
+    /**
+     * Catch catalog edits made without a change event (e.g. directly in the database) and running totals
+     * that drifted from the lines, one bounded batch of carts per transaction.
+     * The first run comes shortly after startup, so lines and totals predating the snapshot columns are filled in.
+     */
+    @Scheduled(fixedDelayString = "${cart.snapshot.reconcile-interval-ms:3600000}",
+               initialDelayString = "${cart.snapshot.reconcile-initial-delay-ms:30000}")
+    public void reconcileSnapshots() {
+        try {
+            int reconciled = cartService.reconcileCarts(reconcileBatchSize);
+            if (reconciled > 0) {
+                log.info("Reconciled line snapshots and totals of {} carts", reconciled);
+            }
+        } catch (Exception e) {
+            log.error("Error reconciling cart line snapshots", e);
+        }
+    }
+}
@@ -1,25 +1,165 @@
 package fpt.kiennt169.e_commerce.scheduler;
 
 import fpt.kiennt169.e_commerce.services.InventoryService;
-import lombok.RequiredArgsConstructor;
+import fpt.kiennt169.e_commerce.services.StockBucketService;
+import fpt.kiennt169.e_commerce.services.impl.ReservationExpiryQueue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class InventoryScheduler {
 
     private final InventoryService inventoryService;
+    private final StockBucketService stockBucketService;
+    private final ReservationExpiryQueue expiryQueue;
+    private final Timer sweepPassTimer;
+    private final DistributionSummary sweepPassSize;
+    private final Counter sweepExpiredCounter;
+    private final Counter deadlineExpiredCounter;
+    private final Counter archivedCounter;
+
+    @Value("${inventory.reservation.sweep.batch-size:500}")
+    private int sweepBatchSize;
+
+    @Value("${inventory.reservation.archive.retention-days:7}")
+    private int archiveRetentionDays;
+
+    @Value("${inventory.reservation.archive.batch-size:1000}")
+    private int archiveBatchSize;
 
-    @Scheduled(fixedRate = 60000)
+    @Value("${inventory.reserved-resync.batch-size:500}")
+    private int resyncBatchSize;
+
+    public InventoryScheduler(InventoryService inventoryService, StockBucketService stockBucketService,
+                              ReservationExpiryQueue expiryQueue, MeterRegistry meterRegistry) {
+        this.inventoryService = inventoryService;
+        this.stockBucketService = stockBucketService;
+        this.expiryQueue = expiryQueue;
+        this.sweepPassTimer = Timer.builder("inventory.reservations.sweep.pass")
+                .description("Duration of one expiry sweep pass")
+                .register(meterRegistry);
+        this.sweepPassSize = DistributionSummary.builder("inventory.reservations.sweep.pass.size")
+                .description("Reservations expired by one sweep pass")
+                .register(meterRegistry);
+        this.sweepExpiredCounter = Counter.builder("inventory.reservations.expired")
+                .description("Expired reservations")
+                .tag("trigger", "sweep")
+                .register(meterRegistry);
+        this.deadlineExpiredCounter = Counter.builder("inventory.reservations.expired")
+                .description("Expired reservations")
+                .tag("trigger", "deadline")
+                .register(meterRegistry);
+        this.archivedCounter = Counter.builder("inventory.reservations.archived")
+                .description("Finished reservations moved to the archive table")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Expire reservations from the in-memory queue as soon as their deadline passes
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.expiry-queue.poll-ms:250}")
+    public void expireDueReservations() {
+        try {
+            List<String> due;
+            while (!(due = expiryQueue.drainDue(sweepBatchSize)).isEmpty()) {
+                int expired = inventoryService.expireReservations(due);
+                deadlineExpiredCounter.increment(expired);
+                log.debug("Expired {} of {} due reservations", expired, due.size());
+            }
+        } catch (Exception e) {
+            log.error("Error expiring due reservations", e);
+        }
+    }
+
+    /**
+     * Safety net for reservations the queue does not know about (other nodes, restarts, full queue):
+     * expire overdue reservations in bounded passes (one transaction each) until a pass comes back short.
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.sweep.interval-ms:300000}")
     public void cleanupExpiredReservations() {
         log.debug("Running scheduled cleanup of expired reservations");
         try {
-            inventoryService.cleanupExpiredReservations();
+            int expired;
+            int total = 0;
+            do {
+                long start = System.nanoTime();
+                expired = inventoryService.cleanupExpiredReservations(sweepBatchSize);
+                long elapsed = System.nanoTime() - start;
+
+                sweepPassTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                sweepPassSize.record(expired);
+                sweepExpiredCounter.increment(expired);
+                total += expired;
+                log.debug("Sweep pass expired {} reservations in {} ms", expired, elapsed / 1_000_000);
+            } while (expired >= sweepBatchSize);
+
+            if (total > 0) {
+                log.info("Cleaned up {} expired reservations", total);
+            }
         } catch (Exception e) {
             log.error("Error during reservation cleanup", e);
         }
     }
+
+    /**
+     * Keep inventory_reservations small: move finished reservations past the retention window
+     * to the archive table, one bounded batch per transaction
+     */
+    @Scheduled(cron = "${inventory.reservation.archive.cron:0 30 3 * * *}")
+    public void archiveReservations() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(archiveRetentionDays);
+        log.debug("Archiving reservations that expired before {}", cutoff);
+        try {
+            int archived;
+            int total = 0;
+            do {
+                archived = inventoryService.archiveReservations(cutoff, archiveBatchSize);
+                archivedCounter.increment(archived);
+                total += archived;
+            } while (archived >= archiveBatchSize);
+
+            if (total > 0) {
+                log.info("Archived {} reservations", total);
+            }
+        } catch (Exception e) {
+            log.error("Error during reservation archiving", e);
+        }
+    }
+
+    /**
+     * Repair drift of product_variants.reserved_quantity, in batches locked in id order
+     */
+    @Scheduled(cron = "${inventory.reserved-resync.cron:0 45 3 * * *}")
+    public void resyncReservedQuantities() {
+        try {
+            inventoryService.resyncReservedQuantities(resyncBatchSize);
+        } catch (Exception e) {
+            log.error("Error resyncing reserved quantities", e);
+        }
+    }
+
+    /**
+     * Refill empty stock buckets of hot variants from their siblings and from stock released to the variant row
+     */
+    @Scheduled(fixedDelayString = "${inventory.buckets.rebalance-interval-ms:10000}")
+    public void rebalanceStockBuckets() {
+        try {
+            for (Long variantId : stockBucketService.findVariantsToRebalance()) {
+                stockBucketService.rebalance(variantId);
+            }
+        } catch (Exception e) {
+            log.error("Error rebalancing stock buckets", e);
+        }
+    }
 }
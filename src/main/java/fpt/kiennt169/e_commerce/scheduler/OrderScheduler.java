@@ -0,0 +1,40 @@
+package fpt.kiennt169.e_commerce.scheduler;
+
+import fpt.kiennt169.e_commerce.services.impl.OrderIdempotency;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderScheduler {
+
+    private final OrderIdempotency idempotency;
+
+    @Value("${order.idempotency.purge.batch-size:1000}")
+    private int purgeBatchSize;
+
+    /**
+     * Delete expired idempotency keys, one bounded batch per transaction
+     */
+    @Scheduled(fixedDelayString = "${order.idempotency.purge.interval-ms:3600000}")
+    public void purgeIdempotencyKeys() {
+        try {
+            int deleted;
+            int total = 0;
+            do {
+                deleted = idempotency.purgeExpired(purgeBatchSize);
+                total += deleted;
+            } while (deleted >= purgeBatchSize);
+
+            if (total > 0) {
+                log.info("Purged {} expired idempotency keys", total);
+            }
+        } catch (Exception e) {
+            log.error("Error purging idempotency keys", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fpt.kiennt169.e_commerce.scheduler;
+
+import fpt.kiennt169.e_commerce.services.OutboxService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxScheduler {
+
+    private final OutboxService outboxService;
+
+    @Value("${outbox.dispatch.batch-size:50}")
+    private int dispatchBatchSize;
+
+    @Value("${outbox.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${outbox.purge.batch-size:1000}")
+    private int purgeBatchSize;
+
+    /**
+     * Deliver due outbox events in batches until a batch comes back short
+     */
+    @Scheduled(fixedDelayString = "${outbox.dispatch.interval-ms:1000}")
+    public void dispatch() {
+        try {
+            int claimed;
+            do {
+                claimed = outboxService.dispatchDue(dispatchBatchSize);
+            } while (claimed >= dispatchBatchSize);
+        } catch (Exception e) {
+            log.error("Error dispatching outbox events", e);
+        }
+    }
+
+    /**
+     * Delete delivered events past the retention window, one bounded batch per transaction
+     */
+    @Scheduled(cron = "${outbox.purge.cron:0 15 4 * * *}")
+    public void purgeSent() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        try {
+            int deleted;
+            int total = 0;
+            do {
+                deleted = outboxService.purgeSent(cutoff, purgeBatchSize);
+                total += deleted;
+            } while (deleted >= purgeBatchSize);
+
+            if (total > 0) {
+                log.info("Purged {} delivered outbox events", total);
+            }
+        } catch (Exception e) {
+            log.error("Error purging outbox events", e);
+        }
+    }
+}
@@ -7,9 +7,9 @@ import fpt.kiennt169.e_commerce.dtos.auth.RegisterRequest;
 public interface AuthService {
 
     /**
-     * Authenticate user and return JWT token
+     * Authenticate user and return JWT token, merging the guest cart of guestId (if any) into the user's cart
      */
-    AuthResponse login(LoginRequest request);
+    AuthResponse login(LoginRequest request, String guestId);
 
     /**
      * Register new user account
@@ -2,30 +2,79 @@ package fpt.kiennt169.e_commerce.services;
 
 import fpt.kiennt169.e_commerce.dtos.cart.*;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+
 public interface CartService {
 
     /**
-     * Get or create cart for user
+     * Get cart for user, an empty cart (without id) if the user has none yet
+     */
+    CartDTO getCartForUser(Long userId);
+
+    /**
+     * Get cart for guest session, an empty cart (without id) if the session has none yet
      */
-    CartDTO getOrCreateCartForUser(Long userId);
+    CartDTO getCartForSession(String sessionId);
 
     /**
-     * Get or create cart for guest session
+     * Current stock of each cart line, without building the cart view
      */
-    CartDTO getOrCreateCartForSession(String sessionId);
+    CartAvailabilityDTO getCartAvailability(Long userId, String sessionId);
 
     /**
      * Add item to cart
      */
     CartDTO addToCart(Long userId, String sessionId, AddToCartRequest request);
 
+    /**
+     * Add item to cart, returning only the changed item and the cart totals
+     */
+    CartDeltaDTO addToCartDelta(Long userId, String sessionId, AddToCartRequest request);
+
+    /**
+     * Add (or with replace, set) several variants at once, with a result per variant
+     */
+    BulkCartResultDTO addAllToCart(Long userId, String sessionId, BulkAddToCartRequest request);
+
     /**
      * Update cart item quantity
      */
     CartDTO updateCartItem(Long userId, String sessionId, String cartItemId, UpdateCartItemRequest request);
 
+    /**
+     * Update cart item quantity, returning only the changed item and the cart totals
+     */
+    CartDeltaDTO updateCartItemDelta(Long userId, String sessionId, String cartItemId, UpdateCartItemRequest request);
+
     /**
      * Remove item from cart
      */
     CartDTO removeFromCart(Long userId, String sessionId, String cartItemId);
+
+    /**
+     * Remove item from cart, returning only the removed item id and the cart totals
+     */
+    CartDeltaDTO removeFromCartDelta(Long userId, String sessionId, String cartItemId);
+
+    /**
+     * Move the guest cart of a session into the user's cart, summing quantities, and delete it
+     */
+    void mergeGuestCart(Long userId, String sessionId);
+
+    /**
+     * Delete one batch of guest carts untouched since the cutoff, returns the number deleted
+     */
+    int deleteAbandonedGuestCarts(LocalDateTime cutoff, int batchSize);
+
+    /**
+     * Re-take the line snapshots of the given products where the catalog changed, returns the number of carts touched
+     */
+    int refreshSnapshots(Collection<Long> productIds);
+
+    /**
+     * Re-take every line snapshot that differs from the catalog and re-derive running totals that do not
+     * match the lines, batchSize carts per transaction; returns the number of carts corrected
+     */
+    int reconcileCarts(int batchSize);
 }
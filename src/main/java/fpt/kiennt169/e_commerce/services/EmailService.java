@@ -5,7 +5,7 @@ import fpt.kiennt169.e_commerce.entities.Order;
 public interface EmailService {
     
     /**
-     * Send order confirmation email
+     * Send order confirmation email, failures are thrown so the outbox can retry
      */
     void sendOrderConfirmation(Order order);
     
@@ -1,5 +1,9 @@
 package fpt.kiennt169.e_commerce.services;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+
 public interface InventoryService {
 
     /**
@@ -7,15 +11,22 @@ public interface InventoryService {
      */
     void reserveStock(Long variantId, int quantity, String sessionId);
 
+    /**
+     * Reserve stock for several variants at once (variantId -> quantity), all or nothing.
+     * Replaces the session's earlier ACTIVE reservations, so a repeated checkout does not stack reservations.
+     */
+    void reserveStockBatch(Map<Long, Integer> quantities, String sessionId);
+
     /**
      * Release stock reservation
      */
     void releaseStock(Long variantId, int quantity, String sessionId);
 
     /**
-     * Confirm stock (deduct from inventory after order placed)
+     * Confirm stock (deduct from inventory after order placed),
+     * returns the quantity deducted per variant
      */
-    void confirmStock(String sessionId);
+    Map<Long, Integer> confirmStock(String sessionId);
 
     /**
      * Get available stock for a variant
@@ -23,7 +34,39 @@ public interface InventoryService {
     int getAvailableStock(Long variantId);
 
     /**
-     * Clean up expired reservations
+     * Get available stock of several variants, cache misses are read in one query
+     */
+    Map<Long, Integer> getAvailableStock(Collection<Long> variantIds);
+
+    /**
+     * Get available stock summed over the variants of each product
+     */
+    Map<Long, Integer> getAvailableStockByProduct(Collection<Long> productIds);
+
+    /**
+     * Drop cached availability of variants whose stock was changed outside the inventory service
+     */
+    void invalidateAvailability(Collection<Long> variantIds);
+
+    /**
+     * Expire one batch of overdue reservations, returns how many were expired
+     */
+    int cleanupExpiredReservations(int batchSize);
+
+    /**
+     * Expire the given reservations if they are still active and due, returns how many were expired
+     */
+    int expireReservations(Collection<String> reservationIds);
+
+    /**
+     * Move one batch of finished reservations older than the cutoff to the archive table,
+     * returns how many were moved
+     */
+    int archiveReservations(LocalDateTime cutoff, int batchSize);
+
+    /**
+     * Re-derive reserved_quantity of every variant from its reservations and buckets, batchSize variants
+     * per transaction (locked in id order); returns how many variants were corrected
      */
-    void cleanupExpiredReservations();
+    int resyncReservedQuantities(int batchSize);
 }
@@ -1,15 +1,18 @@
 package fpt.kiennt169.e_commerce.services;
 
+import fpt.kiennt169.e_commerce.dtos.CursorPageResponse;
 import fpt.kiennt169.e_commerce.dtos.order.*;
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 public interface OrderService {
 
     /**
-     * Create order from cart
+     * Create order from cart. With an idempotency key, a retry of the same request
+     * returns the order created by the first one.
      */
-    OrderDTO createOrder(Long userId, String sessionId, CreateOrderRequest request);
+    OrderDTO createOrder(Long userId, String sessionId, CreateOrderRequest request, String idempotencyKey);
 
     /**
      * Get order by ID
@@ -31,8 +34,23 @@ public interface OrderService {
      */
     Page<OrderListDTO> getAllOrders(Pageable pageable);
 
+    /**
+     * Get orders by user ID, newest first, one keyset page after the cursor (first page when null)
+     */
+    CursorPageResponse<OrderListDTO> getUserOrders(Long userId, String cursor, int size);
+
+    /**
+     * Get all orders (admin), optionally of one status, newest first, one keyset page after the cursor
+     */
+    CursorPageResponse<OrderListDTO> getAllOrders(OrderStatus status, String cursor, int size);
+
     /**
      * Update order status
      */
     OrderDTO updateOrderStatus(String orderId, UpdateOrderStatusRequest request);
+
+    /**
+     * Move many orders to one status, with one result per order
+     */
+    BulkOrderStatusResultDTO bulkUpdateOrderStatus(BulkUpdateOrderStatusRequest request);
 }
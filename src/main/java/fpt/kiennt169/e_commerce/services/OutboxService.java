@@ -0,0 +1,35 @@
+package fpt.kiennt169.e_commerce.services;
+
+import fpt.kiennt169.e_commerce.entities.Order;
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public interface OutboxService {
+
+    /**
+     * Record an order confirmation email in the current transaction
+     */
+    void enqueueOrderConfirmation(Order order);
+
+    /**
+     * Record an order status update email in the current transaction
+     */
+    void enqueueOrderStatusUpdate(Order order, OrderStatus oldStatus, OrderStatus newStatus);
+
+    /**
+     * Record one order status update email per order in the current transaction, with a single insert
+     */
+    void enqueueOrderStatusUpdates(Collection<String> orderIds, OrderStatus oldStatus, OrderStatus newStatus);
+
+    /**
+     * Deliver at most batchSize due events; returns how many were claimed
+     */
+    int dispatchDue(int batchSize);
+
+    /**
+     * Delete at most limit events delivered before the cutoff
+     */
+    int purgeSent(LocalDateTime cutoff, int limit);
+}
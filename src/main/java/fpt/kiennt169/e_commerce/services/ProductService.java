@@ -5,6 +5,7 @@ import fpt.kiennt169.e_commerce.dtos.product.*;
 import org.springframework.data.domain.Pageable;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 
 public interface ProductService {
 
@@ -28,4 +29,9 @@ public interface ProductService {
             String search,
             Pageable pageable
     );
+
+    /**
+     * Announce that the given products changed, so data copied from them is refreshed
+     */
+    void publishCatalogChange(Collection<Long> productIds);
 }
@@ -0,0 +1,28 @@
+package fpt.kiennt169.e_commerce.services;
+
+import fpt.kiennt169.e_commerce.dtos.inventory.StockBucketsDTO;
+
+import java.util.List;
+
+public interface StockBucketService {
+
+    /**
+     * Get the stock buckets of a variant
+     */
+    StockBucketsDTO getBuckets(Long variantId);
+
+    /**
+     * Split the variant's sellable stock into the given number of buckets (0 turns bucketing off)
+     */
+    StockBucketsDTO configureBuckets(Long variantId, int buckets);
+
+    /**
+     * Spread the variant's sellable stock evenly over its buckets again
+     */
+    StockBucketsDTO rebalance(Long variantId);
+
+    /**
+     * Bucketed variants whose stock is unevenly spread or partly outside the buckets
+     */
+    List<Long> findVariantsToRebalance();
+}
@@ -8,6 +8,7 @@ import fpt.kiennt169.e_commerce.enums.UserRole;
 import fpt.kiennt169.e_commerce.exceptions.BadRequestException;
 import fpt.kiennt169.e_commerce.repositories.UserRepository;
 import fpt.kiennt169.e_commerce.services.AuthService;
+import fpt.kiennt169.e_commerce.services.CartService;
 import fpt.kiennt169.e_commerce.services.TokenService;
 import fpt.kiennt169.e_commerce.util.MessageUtil;
 import lombok.RequiredArgsConstructor;
@@ -32,13 +33,14 @@ public class AuthServiceImpl implements AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final MessageUtil messageUtil;
+    private final CartService cartService;
 
     @Value("${jwt.expiration}")
     private Long jwtExpiration;
 
     @Override
     @Transactional(readOnly = true)
-    public AuthResponse login(LoginRequest request) {
+    public AuthResponse login(LoginRequest request, String guestId) {
         log.debug("Login attempt for email: {}", request.getEmail());
 
         Authentication authentication = authenticationManager.authenticate(
@@ -53,6 +55,10 @@ public class AuthServiceImpl implements AuthService {
 
         log.info("User logged in successfully: {}", user.getEmail());
 
+        if (guestId != null) {
+            mergeGuestCart(user.getId(), guestId);
+        }
+
         return AuthResponse.of(
                 token,
                 jwtExpiration,
@@ -97,4 +103,15 @@ public class AuthServiceImpl implements AuthService {
                         .build()
         );
     }
+
+    /**
+     * Runs in its own transaction; a failed merge leaves the guest cart in place and does not fail the login
+     */
+    private void mergeGuestCart(Long userId, String guestId) {
+        try {
+            cartService.mergeGuestCart(userId, guestId);
+        } catch (Exception e) {
+            log.warn("Could not merge guest cart {} into cart of user {}", guestId, userId, e);
+        }
+    }
 }
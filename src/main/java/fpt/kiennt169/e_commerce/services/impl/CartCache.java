@@ -0,0 +1,100 @@
+package fpt.kiennt169.e_commerce.services.impl;
+
+import fpt.kiennt169.e_commerce.dtos.cart.CartDTO;
+import fpt.kiennt169.e_commerce.util.ExpiringLruCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+/**
+ * Read-through cache of cart views, keyed by user id or guest session id.
+ * The database stays the only copy of the cart: every cart write invalidates the entry after commit
+ * and the next read loads it again. Entries expire after a short TTL, which bounds how long
+ * another node's write can go unnoticed.
+ */
+@Component
+public class CartCache {
+
+    private final ExpiringLruCache<String, CartDTO> carts;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${cart.cache.enabled:true}")
+    private boolean enabled;
+
+    public CartCache(@Value("${cart.cache.max-entries:10000}") int maxEntries,
+                     @Value("${cart.cache.ttl-ms:30000}") long ttlMillis,
+                     MeterRegistry meterRegistry) {
+        this.carts = new ExpiringLruCache<>(maxEntries, ttlMillis);
+        Gauge.builder("cart.cache.size", carts, ExpiringLruCache::size)
+                .description("Cached carts")
+                .register(meterRegistry);
+        this.hits = Counter.builder("cart.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("cart.cache.requests").tag("result", "miss").register(meterRegistry);
+    }
+
+    public Optional<CartDTO> get(Long userId, String sessionId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Optional<CartDTO> cart = carts.get(key(userId, sessionId));
+        (cart.isPresent() ? hits : misses).increment();
+        return cart;
+    }
+
+    /**
+     * Take before loading a cart, see {@link ExpiringLruCache#stamp()}
+     */
+    public long stamp() {
+        return carts.stamp();
+    }
+
+    public void put(Long userId, String sessionId, CartDTO cart, long stamp) {
+        if (enabled) {
+            carts.put(key(userId, sessionId), cart, stamp);
+        }
+    }
+
+    /**
+     * Drop the cart once the current transaction commits (or right away without one)
+     */
+    public void invalidate(Long userId, String sessionId) {
+        String key = key(userId, sessionId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            carts.invalidate(key);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                carts.invalidate(key);
+            }
+        });
+    }
+
+    /**
+     * Drop every cart once the current transaction commits, for changes that touch many carts
+     */
+    public void invalidateAll() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            carts.invalidateAll();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                carts.invalidateAll();
+            }
+        });
+    }
+
+    private static String key(Long userId, String sessionId) {
+        return userId != null ? "user:" + userId : "session:" + sessionId;
+    }
+}
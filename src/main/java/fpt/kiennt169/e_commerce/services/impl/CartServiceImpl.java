@@ -5,21 +5,48 @@ import fpt.kiennt169.e_commerce.entities.Cart;
 import fpt.kiennt169.e_commerce.entities.CartItem;
 import fpt.kiennt169.e_commerce.entities.ProductVariant;
 import fpt.kiennt169.e_commerce.entities.User;
+import fpt.kiennt169.e_commerce.events.CatalogChangedEvent;
 import fpt.kiennt169.e_commerce.exceptions.BadRequestException;
+import fpt.kiennt169.e_commerce.exceptions.BaseException;
+import fpt.kiennt169.e_commerce.exceptions.ConflictException;
 import fpt.kiennt169.e_commerce.exceptions.InsufficientStockException;
 import fpt.kiennt169.e_commerce.exceptions.ResourceNotFoundException;
 import fpt.kiennt169.e_commerce.mappers.CartMapper;
+import fpt.kiennt169.e_commerce.repositories.CartItemRepository;
 import fpt.kiennt169.e_commerce.repositories.CartRepository;
 import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
 import fpt.kiennt169.e_commerce.repositories.UserRepository;
+import fpt.kiennt169.e_commerce.repositories.projections.CartLine;
+import fpt.kiennt169.e_commerce.repositories.projections.CartLineRef;
+import fpt.kiennt169.e_commerce.repositories.projections.GuestCartRef;
 import fpt.kiennt169.e_commerce.services.CartService;
 import fpt.kiennt169.e_commerce.services.InventoryService;
+import fpt.kiennt169.e_commerce.util.Money;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -27,101 +54,325 @@ import java.util.Optional;
 public class CartServiceImpl implements CartService {
 
     private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
     private final ProductVariantRepository variantRepository;
     private final UserRepository userRepository;
     private final CartMapper cartMapper;
     private final InventoryService inventoryService;
+    private final CartCache cartCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${cart.write.max-attempts:3}")
+    private int maxWriteAttempts;
+
+    @Value("${cart.write.retry-backoff-ms:20}")
+    private long retryBackoffMillis;
 
+    /**
+     * Served from the cart cache when possible, without opening a transaction
+     */
     @Override
-    @Transactional
-    public CartDTO getOrCreateCartForUser(Long userId) {
-        return cartRepository.findByUserId(userId)
-                .map(cartMapper::toDTO)
+    public CartDTO getCartForUser(Long userId) {
+        return cartCache.get(userId, null)
+                .map(this::withCurrentStock)
                 .orElseGet(() -> {
-                    User user = userRepository.findById(userId)
-                            .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
-
-                    Cart cart = Cart.builder()
-                            .user(user)
-                            .build();
-                    cart = cartRepository.save(cart);
-                    log.info("Created cart for user: {}", userId);
-                    return cartMapper.toDTO(cart);
+                    long stamp = cartCache.stamp();
+                    CartDTO cart = transactionTemplate.execute(status -> loadCartForUser(userId));
+                    cartCache.put(userId, null, cart, stamp);
+                    return cart;
                 });
     }
 
     @Override
-    @Transactional
-    public CartDTO getOrCreateCartForSession(String sessionId) {
-        return cartRepository.findBySessionId(sessionId)
-                .map(cartMapper::toDTO)
+    public CartDTO getCartForSession(String sessionId) {
+        return cartCache.get(null, sessionId)
+                .map(this::withCurrentStock)
                 .orElseGet(() -> {
-                    Cart cart = Cart.builder()
-                            .sessionId(sessionId)
-                            .build();
-                    cart = cartRepository.save(cart);
-                    log.info("Created guest cart for session: {}", sessionId);
-                    return cartMapper.toDTO(cart);
+                    long stamp = cartCache.stamp();
+                    CartDTO cart = transactionTemplate.execute(status -> loadCartForSession(sessionId));
+                    cartCache.put(null, sessionId, cart, stamp);
+                    return cart;
                 });
     }
 
+    /**
+     * Lines come from the cached cart view when there is one, otherwise from cart_items alone.
+     * Stock comes from the stock ledger, which keeps each variant for a few seconds,
+     * and one grouped query for the variants it misses.
+     */
+    @Override
+    public CartAvailabilityDTO getCartAvailability(Long userId, String sessionId) {
+        List<LineQuantity> lines = cartCache.get(userId, sessionId)
+                .map(cart -> cart.getItems().stream()
+                        .map(item -> new LineQuantity(item.getId(), item.getVariantId(), item.getQuantity()))
+                        .toList())
+                .orElseGet(() -> findLineRefs(userId, sessionId).stream()
+                        .map(line -> new LineQuantity(line.getId(), line.getVariantId(), line.getQuantity()))
+                        .toList());
+
+        Map<Long, Integer> availableStock = inventoryService.getAvailableStock(
+                lines.stream().map(LineQuantity::variantId).distinct().toList());
+
+        List<CartAvailabilityDTO.Line> result = lines.stream()
+                .map(line -> {
+                    int available = availableStock.getOrDefault(line.variantId(), 0);
+                    return CartAvailabilityDTO.Line.builder()
+                            .itemId(line.itemId())
+                            .variantId(line.variantId())
+                            .quantity(line.quantity())
+                            .availableStock(available)
+                            .inStock(available > 0)
+                            .exceedsStock(line.quantity() > available)
+                            .build();
+                })
+                .toList();
+        return CartAvailabilityDTO.builder()
+                .lines(result)
+                .allAvailable(result.stream().noneMatch(CartAvailabilityDTO.Line::getExceedsStock))
+                .build();
+    }
+
     @Override
-    @Transactional
     public CartDTO addToCart(Long userId, String sessionId, AddToCartRequest request) {
-        log.debug("Adding to cart: variantId={}, quantity={}", request.getVariantId(), request.getQuantity());
+        return writeWithRetry(() -> reloadDTO(applyAdd(userId, sessionId, request).cart()));
+    }
 
-        Cart cart = getOrCreateCart(userId, sessionId);
+    @Override
+    public CartDeltaDTO addToCartDelta(Long userId, String sessionId, AddToCartRequest request) {
+        return writeWithRetry(() -> toDeltaDTO(applyAdd(userId, sessionId, request)));
+    }
 
-        ProductVariant variant = variantRepository.findById(request.getVariantId())
-                .orElseThrow(() -> new ResourceNotFoundException("ProductVariant", "id", request.getVariantId()));
+    @Override
+    public CartDTO updateCartItem(Long userId, String sessionId, String cartItemId, UpdateCartItemRequest request) {
+        return writeWithRetry(() -> reloadDTO(applyUpdate(userId, sessionId, cartItemId, request).cart()));
+    }
 
-        Optional<CartItem> existingItem = cart.getItems().stream()
-                .filter(item -> item.getProductVariant().getId().equals(request.getVariantId()))
-                .findFirst();
+    @Override
+    public CartDeltaDTO updateCartItemDelta(Long userId, String sessionId, String cartItemId, UpdateCartItemRequest request) {
+        return writeWithRetry(() -> toDeltaDTO(applyUpdate(userId, sessionId, cartItemId, request)));
+    }
 
-        if (existingItem.isPresent()) {
-            CartItem item = existingItem.get();
-            int newQuantity = item.getQuantity() + request.getQuantity();
+    @Override
+    public CartDTO removeFromCart(Long userId, String sessionId, String cartItemId) {
+        return writeWithRetry(() -> reloadDTO(applyRemove(userId, sessionId, cartItemId).cart()));
+    }
+
+    @Override
+    public CartDeltaDTO removeFromCartDelta(Long userId, String sessionId, String cartItemId) {
+        return writeWithRetry(() -> toDeltaDTO(applyRemove(userId, sessionId, cartItemId)));
+    }
+
+    /**
+     * Lines are checked against one variant lookup and one availability lookup,
+     * lines that fail are reported and do not roll back the others
+     */
+    @Override
+    public BulkCartResultDTO addAllToCart(Long userId, String sessionId, BulkAddToCartRequest request) {
+        return writeWithRetry(() -> applyAddAll(userId, sessionId, request));
+    }
 
-            int availableStock = inventoryService.getAvailableStock(request.getVariantId());
-            if (availableStock < newQuantity) {
-                throw new InsufficientStockException(
-                    "Insufficient stock", newQuantity, availableStock);
+    private BulkCartResultDTO applyAddAll(Long userId, String sessionId, BulkAddToCartRequest request) {
+        Map<Long, Integer> requested = new LinkedHashMap<>();
+        for (AddToCartRequest line : request.getItems()) {
+            requested.merge(line.getVariantId(), line.getQuantity(), Integer::sum);
+        }
+        log.debug("Bulk adding to cart: {} variants, replace={}", requested.size(), request.isReplace());
+
+        Cart cart = getOrCreateCart(userId, sessionId);
+
+        Map<Long, ProductVariant> variants = variantRepository.findWithProductByIdIn(requested.keySet()).stream()
+                .collect(Collectors.toMap(ProductVariant::getId, Function.identity()));
+        Map<Long, CartItem> existingItems = cartItemRepository
+                .findByCartIdAndProductVariantIdIn(cart.getId(), requested.keySet()).stream()
+                .collect(Collectors.toMap(item -> item.getProductVariant().getId(), Function.identity()));
+        Map<Long, Integer> availableStock = inventoryService.getAvailableStock(variants.keySet());
+
+        List<CartLineResultDTO> results = new ArrayList<>();
+        List<CartItem> newItems = new ArrayList<>();
+        for (Map.Entry<Long, Integer> line : requested.entrySet()) {
+            Long variantId = line.getKey();
+            int quantity = line.getValue();
+
+            ProductVariant variant = variants.get(variantId);
+            if (variant == null) {
+                results.add(failedLine(variantId, quantity, new ResourceNotFoundException("ProductVariant", "id", variantId)));
+                continue;
             }
 
-            item.setQuantity(newQuantity);
-        } else {
-            int availableStock = inventoryService.getAvailableStock(request.getVariantId());
-            if (availableStock < request.getQuantity()) {
-                throw new InsufficientStockException(
-                    "Insufficient stock", request.getQuantity(), availableStock);
+            CartItem item = existingItems.get(variantId);
+            int currentQuantity = item != null ? item.getQuantity() : 0;
+            int newQuantity = request.isReplace() ? quantity : currentQuantity + quantity;
+            int available = availableStock.getOrDefault(variantId, 0);
+            if (available < newQuantity) {
+                results.add(failedLine(variantId, quantity, new InsufficientStockException(variant.getSku(), newQuantity, available)));
+                continue;
             }
 
-            CartItem item = CartItem.builder()
-                    .cart(cart)
-                    .productVariant(variant)
-                    .quantity(request.getQuantity())
-                    .build();
-            cart.addItem(item);
+            if (item == null) {
+                item = newItem(cart, variant);
+                newItems.add(item);
+            }
+            setQuantity(cart, item, newQuantity, variant);
+            results.add(CartLineResultDTO.builder()
+                    .variantId(variantId)
+                    .quantity(newQuantity)
+                    .success(true)
+                    .build());
         }
 
-        cart = cartRepository.save(cart);
+        cartItemRepository.saveAll(newItems);
+        cartCache.invalidate(userId, sessionId);
+
+        int succeeded = (int) results.stream().filter(CartLineResultDTO::isSuccess).count();
+        log.info("Bulk added to cart: {} of {} variants", succeeded, results.size());
+        return BulkCartResultDTO.builder()
+                .cart(reloadDTO(cart))
+                .results(results)
+                .succeeded(succeeded)
+                .failed(results.size() - succeeded)
+                .build();
+    }
 
-        log.info("Added to cart: variantId={}, quantity={}", request.getVariantId(), request.getQuantity());
-        return cartMapper.toDTO(cart);
+    /**
+     * Merged with set-based statements, without loading either cart.
+     * A user without a cart simply takes over the guest cart.
+     */
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void mergeGuestCart(Long userId, String sessionId) {
+        Optional<String> guestCartId = cartRepository.findGuestCartId(sessionId);
+        if (guestCartId.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Optional<String> userCartId = cartRepository.findIdByUserId(userId);
+
+        if (userCartId.isEmpty()) {
+            cartRepository.lockByIds(List.of(guestCartId.get()));
+            cartRepository.assignToUser(guestCartId.get(), userId, now);
+            log.info("Guest cart {} assigned to user {}", guestCartId.get(), userId);
+        } else {
+            cartRepository.lockByIds(List.of(guestCartId.get(), userCartId.get()));
+            int merged = cartItemRepository.mergeInto(guestCartId.get(), userCartId.get(), now);
+            cartItemRepository.deleteByCartId(guestCartId.get());
+            cartRepository.deleteCart(guestCartId.get());
+            cartRepository.recalculateTotals(userCartId.get(), now);
+            log.info("Merged {} guest cart items into cart of user {}", merged, userId);
+        }
+
+        cartCache.invalidate(userId, null);
+        cartCache.invalidate(null, sessionId);
     }
 
     @Override
     @Transactional
-    public CartDTO updateCartItem(Long userId, String sessionId, String cartItemId, UpdateCartItemRequest request) {
-        log.debug("Updating cart item: id={}, quantity={}", cartItemId, request.getQuantity());
+    public int deleteAbandonedGuestCarts(LocalDateTime cutoff, int batchSize) {
+        List<GuestCartRef> carts = cartRepository.lockAbandonedGuestCarts(cutoff, batchSize);
+        if (carts.isEmpty()) {
+            return 0;
+        }
+        List<String> cartIds = carts.stream().map(GuestCartRef::getId).toList();
+        int items = cartItemRepository.deleteByCartIds(cartIds);
+        int deleted = cartRepository.deleteByIds(cartIds);
+        carts.forEach(cart -> cartCache.invalidate(null, cart.getSessionId()));
 
-        Cart cart = findCart(userId, sessionId);
+        log.debug("Deleted {} abandoned guest carts with {} items", deleted, items);
+        return deleted;
+    }
+
+    /**
+     * Runs after the catalog change committed, in a transaction of its own
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        int refreshed = refreshSnapshots(event.productIds());
+        log.info("Catalog change of {} products refreshed {} carts", event.productIds().size(), refreshed);
+    }
+
+    @Override
+    @Transactional
+    public int refreshSnapshots(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return 0;
+        }
+        return recalculateChangedCarts(cartItemRepository.refreshSnapshots(productIds));
+    }
+
+    /**
+     * Walks the carts in id order, batchSize carts per transaction: stale line snapshots are re-taken,
+     * then the running totals of the batch are re-derived where they do not match the lines
+     */
+    @Override
+    public int reconcileCarts(int batchSize) {
+        String afterId = "";
+        int reconciled = 0;
+        List<String> cartIds;
+        do {
+            cartIds = cartRepository.findIdsAfter(afterId, Limit.of(batchSize));
+            if (cartIds.isEmpty()) {
+                break;
+            }
+            List<String> batch = cartIds;
+            Integer changed = transactionTemplate.execute(status -> {
+                cartItemRepository.refreshSnapshotsOfCarts(batch);
+                int resynced = cartRepository.resyncTotals(batch);
+                if (resynced > 0) {
+                    cartCache.invalidateAll();
+                }
+                return resynced;
+            });
+            reconciled += changed != null ? changed : 0;
+            afterId = cartIds.get(cartIds.size() - 1);
+        } while (cartIds.size() >= batchSize);
+        return reconciled;
+    }
+
+    /**
+     * Mutations load the cart row and the touched item only, never the whole cart
+     */
+    private CartChange applyAdd(Long userId, String sessionId, AddToCartRequest request) {
+        log.debug("Adding to cart: variantId={}, quantity={}", request.getVariantId(), request.getQuantity());
+
+        Cart cart = getOrCreateCart(userId, sessionId);
 
-        CartItem item = cart.getItems().stream()
-                .filter(i -> cartItemId.equals(String.valueOf(i.getId())))
+        ProductVariant variant = variantRepository.findWithProductById(request.getVariantId())
+                .orElseThrow(() -> new ResourceNotFoundException("ProductVariant", "id", request.getVariantId()));
+
+        Optional<CartLine> existingLine = cartItemRepository.findLine(cart.getId(), variant.getId());
+        int currentQuantity = existingLine.map(CartLine::getQuantity).orElse(0);
+        Money currentSubtotal = existingLine.map(existing -> Money.of(existing.getSubtotal())).orElse(Money.ZERO);
+        int newQuantity = currentQuantity + request.getQuantity();
+
+        int availableStock = inventoryService.getAvailableStock(request.getVariantId());
+        if (availableStock < newQuantity) {
+            throw new InsufficientStockException(
+                "Insufficient stock", newQuantity, availableStock);
+        }
+
+        CartItem line = CartItem.builder().quantity(request.getQuantity()).build();
+        line.snapshot(variant);
+        Long itemId = cartItemRepository.upsertLine(cart.getId(), variant.getId(), request.getQuantity(), availableStock,
+                        line.getUnitPrice().toBigDecimal(), line.getVariantSku(), line.getVariantSize(), line.getVariantColor(),
+                        line.getProductId(), line.getProductName(), line.getProductImageUrl(), LocalDateTime.now())
+                .stream()
                 .findFirst()
-                .orElseThrow(() -> new ResourceNotFoundException("CartItem", "id", cartItemId));
+                .orElseThrow(() -> new ConcurrencyFailureException("Cart line grew concurrently: " + cart.getId()));
+
+        CartItem item = cartItemRepository.findById(itemId)
+                .orElseThrow(() -> new ResourceNotFoundException("CartItem", "id", itemId));
+        cart.adjustTotals(item.getQuantity() - currentQuantity, item.getSubtotal().minus(currentSubtotal));
+        cartCache.invalidate(userId, sessionId);
+
+        log.info("Added to cart: variantId={}, quantity={}", request.getVariantId(), request.getQuantity());
+        return new CartChange(cart, item, null);
+    }
+
+    private CartChange applyUpdate(Long userId, String sessionId, String cartItemId, UpdateCartItemRequest request) {
+        log.debug("Updating cart item: id={}, quantity={}", cartItemId, request.getQuantity());
+
+        Cart cart = findCart(userId, sessionId);
+        CartItem item = findItem(cart, cartItemId);
 
         if (request.getQuantity() <= 0) {
             throw new BadRequestException("Quantity must be greater than 0");
@@ -134,49 +385,142 @@ public class CartServiceImpl implements CartService {
                 "Insufficient stock", request.getQuantity(), availableStock);
         }
 
-        item.setQuantity(request.getQuantity());
-
-        cart = cartRepository.save(cart);
+        setQuantity(cart, item, request.getQuantity(), null);
+        cartCache.invalidate(userId, sessionId);
 
         log.info("Updated cart item: id={}, quantity={}", cartItemId, request.getQuantity());
-        return cartMapper.toDTO(cart);
+        return new CartChange(cart, item, null);
     }
 
-    @Override
-    @Transactional
-    public CartDTO removeFromCart(Long userId, String sessionId, String cartItemId) {
+    private CartChange applyRemove(Long userId, String sessionId, String cartItemId) {
         log.debug("Removing cart item: id={}", cartItemId);
 
         Cart cart = findCart(userId, sessionId);
+        CartItem item = findItem(cart, cartItemId);
 
-        CartItem itemToRemove = cart.getItems().stream()
-                .filter(item -> cartItemId.equals(String.valueOf(item.getId())))
-                .findFirst()
-                .orElseThrow(() -> new ResourceNotFoundException("CartItem", "id", cartItemId));
+        cart.adjustTotals(-item.getQuantity(), item.getSubtotal().negate());
+        cartItemRepository.delete(item);
+        cartCache.invalidate(userId, sessionId);
 
-        cart.removeItem(itemToRemove);
+        log.info("Removed cart item: id={}", cartItemId);
+        return new CartChange(cart, null, item.getId());
+    }
 
-        cart = cartRepository.save(cart);
+    /**
+     * A missing cart is returned as an empty, unsaved one - the row is created by the first mutation
+     */
+    private CartDTO loadCartForUser(Long userId) {
+        return cartRepository.findByUserId(userId)
+                .map(this::toDTO)
+                .orElseGet(this::emptyCart);
+    }
 
-        log.info("Removed cart item: id={}", cartItemId);
-        return cartMapper.toDTO(cart);
+    private CartDTO loadCartForSession(String sessionId) {
+        return cartRepository.findBySessionId(sessionId)
+                .map(this::toDTO)
+                .orElseGet(this::emptyCart);
+    }
+
+    private CartDTO emptyCart() {
+        return CartDTO.builder()
+                .items(List.of())
+                .totalItems(0)
+                .totalPrice(Money.ZERO.toBigDecimal())
+                .build();
+    }
+
+    /**
+     * Map the cart with reservation-aware stock, looked up for all items at once
+     */
+    private CartDTO toDTO(Cart cart) {
+        List<Long> variantIds = cart.getItems().stream()
+                .map(item -> item.getProductVariant().getId())
+                .toList();
+        return cartMapper.toDTO(cart, inventoryService.getAvailableStock(variantIds));
+    }
+
+    /**
+     * Run a cart write in a transaction of its own and retry it, a bounded number of times,
+     * when a concurrent write to the same cart won: a stale cart version, or a cart or line inserted twice
+     */
+    private <T> T writeWithRetry(Supplier<T> write) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> write.get());
+            } catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+                if (attempt >= maxWriteAttempts) {
+                    log.warn("Cart write still conflicting after {} attempts", attempt, e);
+                    throw new ConflictException("The cart was changed concurrently, please try again");
+                }
+                log.debug("Cart write conflict, retrying (attempt {}): {}", attempt, e.getMessage());
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(retryBackoffMillis * attempt + 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new ConflictException("The cart was changed concurrently, please try again");
+                }
+            }
+        }
+    }
+
+    /**
+     * Full view after a mutation: the items are read once, and the running totals are reset from them
+     */
+    private CartDTO reloadDTO(Cart cart) {
+        List<CartItem> items = cartItemRepository.findByCartIdOrderById(cart.getId());
+        cart.recalculateTotals(items);
+
+        List<Long> variantIds = items.stream()
+                .map(item -> item.getProductVariant().getId())
+                .toList();
+        return cartMapper.toDTO(cart, items, inventoryService.getAvailableStock(variantIds));
+    }
+
+    private CartDeltaDTO toDeltaDTO(CartChange change) {
+        Cart cart = change.cart();
+        CartItemDTO item = null;
+        if (change.item() != null) {
+            Long variantId = change.item().getProductVariant().getId();
+            item = cartMapper.toItemDTO(change.item(), inventoryService.getAvailableStock(List.of(variantId)));
+        }
+        return CartDeltaDTO.builder()
+                .cartId(cart.getId())
+                .item(item)
+                .removedItemId(change.removedItemId())
+                .totalItems(cart.getTotalItems())
+                .totalPrice(cart.getTotalPrice().toBigDecimal())
+                .build();
+    }
+
+    /**
+     * Cached carts keep their items, stock is looked up again on every read
+     */
+    private CartDTO withCurrentStock(CartDTO cart) {
+        List<Long> variantIds = cart.getItems().stream()
+                .map(CartItemDTO::getVariantId)
+                .toList();
+        return cartMapper.withStock(cart, inventoryService.getAvailableStock(variantIds));
     }
 
     private Cart getOrCreateCart(Long userId, String sessionId) {
         if (userId != null) {
-            return cartRepository.findByUserId(userId)
+            return cartRepository.findHeaderByUserId(userId)
                     .orElseGet(() -> {
                         User user = userRepository.findById(userId)
                                 .orElseThrow(() -> new ResourceNotFoundException("User", "id", userId));
-                        return Cart.builder()
+                        log.info("Created cart for user: {}", userId);
+                        return cartRepository.save(Cart.builder()
                                 .user(user)
-                                .build();
+                                .build());
                     });
         } else if (sessionId != null) {
-            return cartRepository.findBySessionId(sessionId)
-                    .orElseGet(() -> Cart.builder()
-                            .sessionId(sessionId)
-                            .build());
+            return cartRepository.findHeaderBySessionId(sessionId)
+                    .orElseGet(() -> {
+                        log.info("Created guest cart for session: {}", sessionId);
+                        return cartRepository.save(Cart.builder()
+                                .sessionId(sessionId)
+                                .build());
+                    });
         } else {
             throw new BadRequestException("Either userId or sessionId must be provided");
         }
@@ -184,13 +528,86 @@ public class CartServiceImpl implements CartService {
 
     private Cart findCart(Long userId, String sessionId) {
         if (userId != null) {
-            return cartRepository.findByUserId(userId)
+            return cartRepository.findHeaderByUserId(userId)
                     .orElseThrow(() -> new ResourceNotFoundException("Cart", "userId", userId));
         } else if (sessionId != null) {
-            return cartRepository.findBySessionId(sessionId)
+            return cartRepository.findHeaderBySessionId(sessionId)
                     .orElseThrow(() -> new ResourceNotFoundException("Cart", "sessionId", sessionId));
         } else {
             throw new BadRequestException("Either userId or sessionId must be provided");
         }
     }
+
+    private List<CartLineRef> findLineRefs(Long userId, String sessionId) {
+        if (userId != null) {
+            return cartItemRepository.findLineRefsByUserId(userId);
+        } else if (sessionId != null) {
+            return cartItemRepository.findLineRefsBySessionId(sessionId);
+        } else {
+            throw new BadRequestException("Either userId or sessionId must be provided");
+        }
+    }
+
+    private CartItem findItem(Cart cart, String cartItemId) {
+        Long itemId;
+        try {
+            itemId = Long.valueOf(cartItemId);
+        } catch (NumberFormatException e) {
+            throw new ResourceNotFoundException("CartItem", "id", cartItemId);
+        }
+        return cartItemRepository.findByIdAndCartId(itemId, cart.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("CartItem", "id", cartItemId));
+    }
+
+    private int recalculateChangedCarts(List<String> changedCartIds) {
+        Set<String> cartIds = new HashSet<>(changedCartIds);
+        if (cartIds.isEmpty()) {
+            return 0;
+        }
+        cartRepository.recalculateTotals(cartIds);
+        cartCache.invalidateAll();
+        return cartIds.size();
+    }
+
+    private CartItem newItem(Cart cart, ProductVariant variant) {
+        return CartItem.builder()
+                .cart(cart)
+                .productVariant(variant)
+                .quantity(0)
+                .unitPrice(Money.ZERO)
+                .build();
+    }
+
+    /**
+     * Set the quantity of a line, re-taking its snapshot when the variant is given,
+     * and apply the difference to the cart's running totals
+     */
+    private void setQuantity(Cart cart, CartItem item, int quantity, ProductVariant variant) {
+        int quantityBefore = item.getQuantity();
+        Money subtotalBefore = item.getSubtotal();
+        if (variant != null) {
+            item.snapshot(variant);
+        }
+        item.setQuantity(quantity);
+        cart.adjustTotals(quantity - quantityBefore, item.getSubtotal().minus(subtotalBefore));
+    }
+
+    private CartLineResultDTO failedLine(Long variantId, int quantity, BaseException error) {
+        return CartLineResultDTO.builder()
+                .variantId(variantId)
+                .quantity(quantity)
+                .success(false)
+                .errorCode(error.getErrorCode())
+                .message(error.getMessage())
+                .build();
+    }
+
+    private record LineQuantity(Long itemId, Long variantId, int quantity) {
+    }
+
+    /**
+     * A cart mutation: the changed item, or the id of the removed one
+     */
+    private record CartChange(Cart cart, CartItem item, Long removedItemId) {
+    }
 }
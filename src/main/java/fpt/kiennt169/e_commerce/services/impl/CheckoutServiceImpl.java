@@ -10,16 +10,18 @@ import fpt.kiennt169.e_commerce.repositories.CartRepository;
 import fpt.kiennt169.e_commerce.repositories.InventoryReservationRepository;
 import fpt.kiennt169.e_commerce.services.CheckoutService;
 import fpt.kiennt169.e_commerce.services.InventoryService;
+import fpt.kiennt169.e_commerce.util.Money;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -33,17 +35,21 @@ public class CheckoutServiceImpl implements CheckoutService {
     @Value("${inventory.reservation.expiry-minutes:15}")
     private int reservationExpiryMinutes;
 
+    /**
+     * Not transactional on purpose: the cart (fetched with its items, variants and products) is read
+     * on its own, and the reservation opens its transaction only after passing admission control,
+     * so checkouts queued on a hot variant do not hold a pooled connection
+     */
     @Override
-    @Transactional
     public CheckoutPrepareResponse prepareCheckout(Long userId, String sessionId) {
         log.debug("Preparing checkout for userId={}, sessionId={}", userId, sessionId);
         
         Cart cart;
         if (userId != null) {
-            cart = cartRepository.findByUserId(userId)
+            cart = cartRepository.findWithVariantsByUserId(userId)
                     .orElseThrow(() -> new BadRequestException("Cart not found"));
         } else {
-            cart = cartRepository.findBySessionId(sessionId)
+            cart = cartRepository.findWithVariantsBySessionId(sessionId)
                     .orElseThrow(() -> new BadRequestException("Cart not found"));
         }
         
@@ -53,17 +59,18 @@ public class CheckoutServiceImpl implements CheckoutService {
         
         String reservationSessionId = sessionId != null ? sessionId : "user-" + userId;
         
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (CartItem cartItem : cart.getItems()) {
+            quantities.merge(cartItem.getProductVariant().getId(), cartItem.getQuantity(), Integer::sum);
+        }
+        inventoryService.reserveStockBatch(quantities, reservationSessionId);
+        
         List<CheckoutPrepareResponse.ReservedItem> reservedItems = new ArrayList<>();
-        BigDecimal totalAmount = BigDecimal.ZERO;
+        long totalAmount = 0;
         
         for (CartItem cartItem : cart.getItems()) {
             ProductVariant variant = cartItem.getProductVariant();
-            
-            inventoryService.reserveStock(
-                    variant.getId(), 
-                    cartItem.getQuantity(), 
-                    reservationSessionId
-            );
+            Money subtotal = Money.of(variant.getPrice()).times(cartItem.getQuantity());
             
             CheckoutPrepareResponse.ReservedItem reservedItem = CheckoutPrepareResponse.ReservedItem.builder()
                     .variantId(variant.getId())
@@ -71,11 +78,11 @@ public class CheckoutServiceImpl implements CheckoutService {
                     .variantDetails(String.format("Size: %s, Color: %s", variant.getSize(), variant.getColor()))
                     .quantity(cartItem.getQuantity())
                     .price(variant.getPrice())
-                    .subtotal(variant.getPrice().multiply(BigDecimal.valueOf(cartItem.getQuantity())))
+                    .subtotal(subtotal.toBigDecimal())
                     .build();
             
             reservedItems.add(reservedItem);
-            totalAmount = totalAmount.add(reservedItem.getSubtotal());
+            totalAmount = Math.addExact(totalAmount, subtotal.minorUnits());
         }
         
         LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(reservationExpiryMinutes);
@@ -87,7 +94,7 @@ public class CheckoutServiceImpl implements CheckoutService {
                 .reservationId(reservationSessionId)
                 .expiresAt(expiresAt)
                 .items(reservedItems)
-                .totalAmount(totalAmount)
+                .totalAmount(Money.toBigDecimal(totalAmount))
                 .message(String.format("Stock reserved for %d minutes. Please complete your order.", reservationExpiryMinutes))
                 .build();
     }
@@ -8,6 +8,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.MailPreparationException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
@@ -53,8 +54,8 @@ public class EmailServiceImpl implements EmailService {
             );
 
             log.info("Order confirmation email sent to: {}", order.getCustomerEmail());
-        } catch (Exception e) {
-            log.error("Failed to send order confirmation email", e);
+        } catch (MessagingException e) {
+            throw new MailPreparationException("Failed to build order confirmation email", e);
         }
     }
 
@@ -80,8 +81,8 @@ public class EmailServiceImpl implements EmailService {
             );
 
             log.info("Order status update email sent to: {}", order.getCustomerEmail());
-        } catch (Exception e) {
-            log.error("Failed to send order status update email", e);
+        } catch (MessagingException e) {
+            throw new MailPreparationException("Failed to build order status update email", e);
         }
     }
 
@@ -2,20 +2,40 @@ package fpt.kiennt169.e_commerce.services.impl;
 
 import fpt.kiennt169.e_commerce.entities.InventoryReservation;
 import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.enums.ReservationMode;
 import fpt.kiennt169.e_commerce.enums.ReservationStatus;
 import fpt.kiennt169.e_commerce.exceptions.InsufficientStockException;
+import fpt.kiennt169.e_commerce.exceptions.ResourceNotFoundException;
+import fpt.kiennt169.e_commerce.repositories.InventoryReservationArchiveRepository;
 import fpt.kiennt169.e_commerce.repositories.InventoryReservationRepository;
 import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.repositories.StockBucketRepository;
+import fpt.kiennt169.e_commerce.repositories.projections.ProductAvailability;
+import fpt.kiennt169.e_commerce.repositories.projections.ReleasedReservations;
+import fpt.kiennt169.e_commerce.repositories.projections.VariantQuantity;
+import fpt.kiennt169.e_commerce.repositories.projections.VariantStockLevel;
 import fpt.kiennt169.e_commerce.services.InventoryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 @RequiredArgsConstructor
@@ -24,31 +44,55 @@ public class InventoryServiceImpl implements InventoryService {
 
     private final ProductVariantRepository variantRepository;
     private final InventoryReservationRepository reservationRepository;
+    private final InventoryReservationArchiveRepository archiveRepository;
+    private final StockLedger stockLedger;
+    private final ReservationExpiryQueue expiryQueue;
+    private final ReservationAdmission admission;
+    private final StockBucketRepository bucketRepository;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${inventory.reservation.expiry-minutes:15}")
     private int reservationExpiryMinutes;
 
+    @Value("${inventory.reservation.mode:CONDITIONAL_UPDATE}")
+    private ReservationMode reservationMode;
+
+    /**
+     * Waits for a turn in the variant's admission queue before opening the transaction,
+     * so queued requests do not hold a pooled connection while they wait
+     */
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public void reserveStock(Long variantId, int quantity, String sessionId) {
-        log.debug("Reserving stock: variantId={}, quantity={}, sessionId={}", variantId, quantity, sessionId);
-
-        ProductVariant variant = variantRepository.findByIdWithLock(variantId)
-                .orElseThrow(() -> new RuntimeException("Variant not found: " + variantId));
+        ReservationAdmission.Ticket ticket = admission.admit(variantId, quantity);
+        try {
+            transactionTemplate.executeWithoutResult(status -> doReserveStock(variantId, quantity, sessionId));
+        } finally {
+            closeOnCompletion(ticket);
+        }
+    }
 
-        int reserved = reservationRepository.getTotalReservedQuantity(variantId);
-        int available = variant.getStockQuantity() - reserved;
+    private void doReserveStock(Long variantId, int quantity, String sessionId) {
+        log.debug("Reserving stock: variantId={}, quantity={}, sessionId={}, mode={}",
+            variantId, quantity, sessionId, reservationMode);
 
-        log.debug("Stock check: variantId={}, total={}, reserved={}, available={}, requested={}", 
-            variantId, variant.getStockQuantity(), reserved, available, quantity);
+        int buckets = variantRepository.findStockBuckets(variantId)
+                .orElseThrow(() -> new ResourceNotFoundException("ProductVariant", "id", variantId));
 
-        if (available < quantity) {
-            throw new InsufficientStockException(
-                "Insufficient stock", quantity, available);
+        ProductVariant variant;
+        Integer bucketNo = null;
+        if (buckets > 0) {
+            bucketNo = reserveFromBuckets(variantId, buckets, quantity);
+            variant = variantRepository.getReferenceById(variantId);
+        } else {
+            variant = switch (reservationMode) {
+                case LOCKING -> reserveWithLock(variantId, quantity);
+                case CONDITIONAL_UPDATE -> reserveWithConditionalUpdate(variantId, quantity);
+            };
         }
 
         InventoryReservation reservation = InventoryReservation.builder()
                 .productVariant(variant)
+                .bucketNo(bucketNo)
                 .quantity(quantity)
                 .sessionId(sessionId)
                 .expiryTime(LocalDateTime.now().plusMinutes(reservationExpiryMinutes))
@@ -56,7 +100,91 @@ public class InventoryServiceImpl implements InventoryService {
                 .build();
 
         reservationRepository.save(reservation);
-        log.info("Stock reserved: variantId={}, quantity={}, available after={}", variantId, quantity, available - quantity);
+        afterCommit(() -> {
+            stockLedger.reserve(variantId, quantity);
+            expiryQueue.schedule(reservation.getId(), reservation.getExpiryTime());
+        });
+        log.info("Stock reserved: variantId={}, quantity={}", variantId, quantity);
+    }
+
+    /**
+     * The session's earlier ACTIVE reservations are replaced, so only the stock on top of them goes through admission
+     */
+    @Override
+    public void reserveStockBatch(Map<Long, Integer> quantities, String sessionId) {
+        Map<Long, Integer> held = new TreeMap<>();
+        for (VariantQuantity row : reservationRepository.sumActiveQuantitiesBySessionId(sessionId)) {
+            held.put(row.getVariantId(), row.getQuantity().intValue());
+        }
+        Map<Long, Integer> additional = new HashMap<>();
+        quantities.forEach((variantId, quantity) ->
+                additional.put(variantId, Math.max(0, quantity - held.getOrDefault(variantId, 0))));
+
+        ReservationAdmission.Ticket ticket = admission.admitAll(additional);
+        try {
+            transactionTemplate.executeWithoutResult(status -> doReserveStockBatch(quantities, held.keySet(), sessionId));
+        } finally {
+            closeOnCompletion(ticket);
+        }
+    }
+
+    private void doReserveStockBatch(Map<Long, Integer> quantities, Collection<Long> heldVariantIds, String sessionId) {
+        log.debug("Reserving stock batch: variants={}, sessionId={}, mode={}", quantities.size(), sessionId, reservationMode);
+
+        // a repeated checkout replaces the session's reservations instead of stacking a second set on them;
+        // every variant involved is locked in one id-ordered pass first, so release and reserve cannot interleave locks
+        if (!heldVariantIds.isEmpty()) {
+            Set<Long> involved = new TreeSet<>(heldVariantIds);
+            involved.addAll(quantities.keySet());
+            variantRepository.lockStockLevels(involved);
+        }
+        int replaced = releaseReservations(reservationRepository.cancelSession(sessionId, LocalDateTime.now()));
+        if (replaced > 0) {
+            log.debug("Replaced {} earlier reservations of session {}", replaced, sessionId);
+        }
+        if (quantities.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Integer> requested = new TreeMap<>(quantities);
+        Map<Long, Integer> buckets = new HashMap<>();
+        Map<Long, Integer> plain = new TreeMap<>(requested);
+        for (Long bucketedId : variantRepository.findBucketedIds(requested.keySet())) {
+            plain.remove(bucketedId);
+        }
+
+        if (!plain.isEmpty()) {
+            lockAndCheck(plain);
+        }
+        requested.keySet().stream()
+                .filter(id -> !plain.containsKey(id))
+                .forEach(id -> buckets.put(id, variantRepository.findStockBuckets(id).orElse(0)));
+
+        LocalDateTime expiryTime = LocalDateTime.now().plusMinutes(reservationExpiryMinutes);
+        List<InventoryReservation> reservations = new ArrayList<>(requested.size());
+        requested.forEach((variantId, quantity) -> {
+            Integer bucketNo = null;
+            if (plain.containsKey(variantId)) {
+                variantRepository.adjustReservedQuantity(variantId, quantity);
+            } else {
+                bucketNo = reserveFromBuckets(variantId, buckets.get(variantId), quantity);
+            }
+            reservations.add(InventoryReservation.builder()
+                    .productVariant(variantRepository.getReferenceById(variantId))
+                    .bucketNo(bucketNo)
+                    .quantity(quantity)
+                    .sessionId(sessionId)
+                    .expiryTime(expiryTime)
+                    .status(ReservationStatus.ACTIVE)
+                    .build());
+        });
+
+        reservationRepository.saveAll(reservations);
+        afterCommit(() -> {
+            requested.forEach(stockLedger::reserve);
+            reservations.forEach(r -> expiryQueue.schedule(r.getId(), expiryTime));
+        });
+        log.info("Stock reserved: variants={}, sessionId={}", requested.size(), sessionId);
     }
 
     @Override
@@ -64,54 +192,303 @@ public class InventoryServiceImpl implements InventoryService {
     public void releaseStock(Long variantId, int quantity, String sessionId) {
         log.debug("Releasing stock: variantId={}, quantity={}, sessionId={}", variantId, quantity, sessionId);
 
-        reservationRepository.cancelReservationsBySessionId(sessionId);
-        log.info("Stock released for session: {}", sessionId);
+        int cancelled = releaseReservations(reservationRepository.cancelSession(sessionId, LocalDateTime.now()));
+        log.info("Stock released for session: {} ({} reservations)", sessionId, cancelled);
     }
 
     @Override
     @Transactional
-    public void confirmStock(String sessionId) {
+    public Map<Long, Integer> confirmStock(String sessionId) {
         log.debug("Confirming stock for session: {}", sessionId);
 
-        List<InventoryReservation> reservations = reservationRepository
-                .findBySessionIdAndStatus(sessionId, ReservationStatus.ACTIVE);
+        Map<Long, Integer> confirmed = new TreeMap<>();
+        for (VariantQuantity row : reservationRepository.confirmSession(sessionId, LocalDateTime.now())) {
+            confirmed.put(row.getVariantId(), row.getQuantity().intValue());
+        }
 
-        for (InventoryReservation reservation : reservations) {
-            ProductVariant variant = variantRepository.findByIdWithLock(reservation.getProductVariant().getId())
-                    .orElseThrow(() -> new RuntimeException("Variant not found"));
+        afterCommit(() -> confirmed.forEach(stockLedger::confirm));
+        log.info("Stock confirmed for session: {} ({} variants)", sessionId, confirmed.size());
+        return confirmed;
+    }
 
-            variant.setStockQuantity(variant.getStockQuantity() - reservation.getQuantity());
-            variantRepository.save(variant);
+    @Override
+    @Transactional
+    public int cleanupExpiredReservations(int batchSize) {
+        return releaseReservations(reservationRepository.expireOverdue(LocalDateTime.now(), batchSize));
+    }
 
-            reservation.complete();
-            reservationRepository.save(reservation);
+    @Override
+    @Transactional
+    public int expireReservations(Collection<String> reservationIds) {
+        if (reservationIds.isEmpty()) {
+            return 0;
         }
-
-        log.info("Stock confirmed for session: {}", sessionId);
+        return releaseReservations(reservationRepository.expireDue(reservationIds, LocalDateTime.now()));
     }
 
     @Override
     @Transactional
-    public void cleanupExpiredReservations() {
-        log.debug("Cleaning up expired reservations...");
+    public int archiveReservations(LocalDateTime cutoff, int batchSize) {
+        int archived = archiveRepository.archiveTerminal(cutoff, batchSize, LocalDateTime.now());
+        log.debug("Archived {} reservations that expired before {}", archived, cutoff);
+        return archived;
+    }
 
-        List<InventoryReservation> expired = reservationRepository
-                .findExpiredReservations(LocalDateTime.now());
+    @Override
+    public int resyncReservedQuantities(int batchSize) {
+        long afterId = 0;
+        int corrected = 0;
+        ResyncBatch batch;
+        do {
+            long from = afterId;
+            batch = transactionTemplate.execute(status -> {
+                List<Long> ids = variantRepository.lockIdsAfter(from, batchSize);
+                List<Long> fixed = ids.isEmpty()
+                        ? List.of()
+                        : variantRepository.resyncReservedQuantities(ids, LocalDateTime.now());
+                if (!fixed.isEmpty()) {
+                    afterCommit(() -> stockLedger.evict(fixed));
+                }
+                return new ResyncBatch(ids, fixed.size());
+            });
+            corrected += batch.corrected();
+            if (!batch.locked().isEmpty()) {
+                afterId = batch.locked().get(batch.locked().size() - 1);
+            }
+        } while (batch.locked().size() >= batchSize);
 
-        for (InventoryReservation reservation : expired) {
-            reservation.expire();
-            reservationRepository.save(reservation);
+        if (corrected > 0) {
+            log.warn("Corrected reserved_quantity of {} variants", corrected);
         }
-
-        log.info("Cleaned up {} expired reservations", expired.size());
+        return corrected;
     }
 
     @Override
     public int getAvailableStock(Long variantId) {
-        ProductVariant variant = variantRepository.findById(variantId)
+        OptionalInt cached = stockLedger.getAvailable(variantId);
+        if (cached.isPresent()) {
+            return cached.getAsInt();
+        }
+
+        VariantStockLevel level = variantRepository.findStockLevels(List.of(variantId)).stream()
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Variant not found: " + variantId));
+
+        stockLedger.load(variantId, level.getStockQuantity(), level.getReservedQuantity());
+        return level.getStockQuantity() - level.getReservedQuantity();
+    }
+
+    @Override
+    public Map<Long, Integer> getAvailableStock(Collection<Long> variantIds) {
+        Map<Long, Integer> available = stockLedger.getAvailable(variantIds);
+        if (available.size() == variantIds.size()) {
+            return available;
+        }
+
+        List<Long> misses = variantIds.stream()
+                .filter(id -> !available.containsKey(id))
+                .distinct()
+                .toList();
+        if (misses.isEmpty()) {
+            return available;
+        }
+        for (VariantStockLevel level : variantRepository.findStockLevels(misses)) {
+            stockLedger.load(level.getVariantId(), level.getStockQuantity(), level.getReservedQuantity());
+            available.put(level.getVariantId(), level.getStockQuantity() - level.getReservedQuantity());
+        }
+        return available;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, Integer> getAvailableStockByProduct(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Integer> available = new HashMap<>();
+        for (ProductAvailability row : variantRepository.sumAvailableByProductIds(productIds)) {
+            available.put(row.getProductId(), row.getAvailable().intValue());
+        }
+        return available;
+    }
+
+    @Override
+    public void invalidateAvailability(Collection<Long> variantIds) {
+        afterCommit(() -> stockLedger.evict(variantIds));
+    }
+
+    /**
+     * Lock the (not bucketed) variants in id order and check that each has the requested quantity available
+     */
+    private void lockAndCheck(Map<Long, Integer> requested) {
+        List<VariantStockLevel> levels = variantRepository.lockStockLevels(requested.keySet());
+        if (levels.size() != requested.size()) {
+            Long missing = requested.keySet().stream()
+                    .filter(id -> levels.stream().noneMatch(level -> level.getVariantId().equals(id)))
+                    .findFirst()
+                    .orElse(null);
+            throw new ResourceNotFoundException("ProductVariant", "id", missing);
+        }
+
+        Map<Long, Integer> reserved = new HashMap<>();
+        if (reservationMode == ReservationMode.LOCKING) {
+            for (VariantQuantity row : reservationRepository.sumActiveQuantitiesByVariantIds(requested.keySet())) {
+                reserved.put(row.getVariantId(), row.getQuantity().intValue());
+            }
+        } else {
+            levels.forEach(level -> reserved.put(level.getVariantId(), level.getReservedQuantity()));
+        }
+
+        for (VariantStockLevel level : levels) {
+            int quantity = requested.get(level.getVariantId());
+            int available = level.getStockQuantity() - reserved.getOrDefault(level.getVariantId(), 0);
+            if (available < quantity) {
+                throw new InsufficientStockException(
+                    "Insufficient stock", quantity, available);
+            }
+        }
+    }
+
+    /**
+     * Reserve on a bucketed variant: a random bucket that is free and has enough left, then each bucket
+     * in turn from a random one. Returns the bucket used.
+     * The variant row is never updated here - configureBuckets locks the variant before its buckets, so a
+     * bucket holder waiting for the variant could deadlock with it. Stock not yet handed to the buckets
+     * becomes sellable on the next rebalance.
+     */
+    private Integer reserveFromBuckets(Long variantId, int buckets, int quantity) {
+        List<Integer> taken = bucketRepository.takeFromAnyBucket(variantId, quantity);
+        if (!taken.isEmpty()) {
+            return taken.get(0);
+        }
+
+        int start = ThreadLocalRandom.current().nextInt(buckets);
+        for (int i = 0; i < buckets; i++) {
+            int bucketNo = (start + i) % buckets;
+            if (bucketRepository.take(variantId, bucketNo, quantity) > 0) {
+                return bucketNo;
+            }
+        }
+
+        int available = variantRepository.findStockLevels(List.of(variantId)).stream()
+                .mapToInt(level -> level.getStockQuantity() - level.getReservedQuantity())
+                .findFirst()
+                .orElse(0);
+        throw new InsufficientStockException("Insufficient stock", quantity, available);
+    }
+
+    /**
+     * Give a released quantity back to the bucket it came from, or to the variant
+     * when it was reserved on the variant row or the bucket no longer exists
+     */
+    private void returnReserved(Long variantId, Integer bucketNo, int quantity) {
+        if (bucketNo != null && bucketRepository.giveBack(variantId, bucketNo, quantity) > 0) {
+            return;
+        }
+        variantRepository.adjustReservedQuantity(variantId, -quantity);
+    }
+
+    /**
+     * Give the quantities of reservations that were just expired or cancelled back to their variants (or buckets).
+     * Only rows returned by the statement that moved them out of ACTIVE are credited, so a reservation is released once.
+     * Each variant row is locked before its buckets, the order configureBuckets locks them in.
+     */
+    private int releaseReservations(List<ReleasedReservations> rows) {
+        Map<Long, Integer> released = new TreeMap<>();
+        int count = 0;
+        List<ReleasedReservations> ordered = rows.stream()
+                .sorted(Comparator.comparing(ReleasedReservations::getVariantId)
+                        .thenComparing(ReleasedReservations::getBucketNo, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .toList();
+        Long previousVariantId = null;
+        for (ReleasedReservations row : ordered) {
+            if (!row.getVariantId().equals(previousVariantId) && row.getBucketNo() != null) {
+                variantRepository.lockStockLevels(List.of(row.getVariantId()));
+            }
+            previousVariantId = row.getVariantId();
+            int quantity = row.getQuantity().intValue();
+            returnReserved(row.getVariantId(), row.getBucketNo(), quantity);
+            released.merge(row.getVariantId(), quantity, Integer::sum);
+            count += row.getReservations().intValue();
+        }
+
+        afterCommit(() -> released.forEach(stockLedger::release));
+
+        log.debug("Released {} reservations across {} variants", count, released.size());
+        return count;
+    }
+
+    /**
+     * Lock the variant row and check the SUM of active reservations
+     */
+    private ProductVariant reserveWithLock(Long variantId, int quantity) {
+        ProductVariant variant = variantRepository.findByIdWithLock(variantId)
                 .orElseThrow(() -> new RuntimeException("Variant not found: " + variantId));
 
         int reserved = reservationRepository.getTotalReservedQuantity(variantId);
-        return variant.getStockQuantity() - reserved;
+        int available = variant.getStockQuantity() - reserved;
+
+        log.debug("Stock check: variantId={}, total={}, reserved={}, available={}, requested={}", 
+            variantId, variant.getStockQuantity(), reserved, available, quantity);
+
+        if (available < quantity) {
+            throw new InsufficientStockException(
+                "Insufficient stock", quantity, available);
+        }
+
+        variantRepository.adjustReservedQuantity(variantId, quantity);
+        stockLedger.load(variantId, variant.getStockQuantity(), reserved);
+        return variant;
+    }
+
+    /**
+     * One guarded UPDATE on reserved_quantity - no row is read or locked up front,
+     * a zero row count means the stock was not available
+     */
+    private ProductVariant reserveWithConditionalUpdate(Long variantId, int quantity) {
+        if (variantRepository.tryReserve(variantId, quantity) == 0) {
+            ProductVariant variant = variantRepository.findById(variantId)
+                    .orElseThrow(() -> new RuntimeException("Variant not found: " + variantId));
+            throw new InsufficientStockException(
+                "Insufficient stock", quantity, variant.getStockQuantity() - variant.getReservedQuantity());
+        }
+        return variantRepository.getReferenceById(variantId);
+    }
+
+    /**
+     * Leave the admission queue once the surrounding transaction (the caller's, if any) has finished
+     * and the variant row locks are released
+     */
+    private void closeOnCompletion(ReservationAdmission.Ticket ticket) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ticket.close();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                ticket.close();
+            }
+        });
+    }
+
+    /**
+     * The ledger must only see committed changes, so deltas are applied after commit
+     * (or immediately when no transaction is active).
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private record ResyncBatch(List<Long> locked, int corrected) {
     }
 }
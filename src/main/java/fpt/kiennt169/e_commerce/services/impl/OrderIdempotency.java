@@ -0,0 +1,141 @@
+package fpt.kiennt169.e_commerce.services.impl;
+
+import fpt.kiennt169.e_commerce.dtos.order.CreateOrderRequest;
+import fpt.kiennt169.e_commerce.dtos.order.OrderDTO;
+import fpt.kiennt169.e_commerce.entities.IdempotencyRecord;
+import fpt.kiennt169.e_commerce.exceptions.BadRequestException;
+import fpt.kiennt169.e_commerce.exceptions.ConflictException;
+import fpt.kiennt169.e_commerce.repositories.IdempotencyRecordRepository;
+import fpt.kiennt169.e_commerce.util.ExpiringLruCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Dedup store for order creation requests sent with an Idempotency-Key.
+ * The database row is claimed and completed inside the order transaction, so an order and its stored
+ * response commit or roll back together and two concurrent retries cannot both create an order.
+ * Completed responses are also kept in a small in-process LRU, so most retries skip the database.
+ */
+@Component
+@Slf4j
+public class OrderIdempotency {
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyRecordRepository repository;
+    private final JsonMapper jsonMapper;
+    private final ExpiringLruCache<String, StoredOrder> responses;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+
+    @Value("${order.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    public OrderIdempotency(IdempotencyRecordRepository repository, JsonMapper jsonMapper,
+                            @Value("${order.idempotency.cache.max-entries:10000}") int maxEntries,
+                            @Value("${order.idempotency.cache.ttl-ms:600000}") long cacheTtlMillis,
+                            MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.jsonMapper = jsonMapper;
+        this.responses = new ExpiringLruCache<>(maxEntries, cacheTtlMillis);
+        this.memoryHits = Counter.builder("order.idempotency.replays").tag("source", "memory").register(meterRegistry);
+        this.databaseHits = Counter.builder("order.idempotency.replays").tag("source", "database").register(meterRegistry);
+    }
+
+    /**
+     * Dedup key of a client key, scoped to the caller so clients cannot collide
+     */
+    public static String key(Long userId, String sessionId, String idempotencyKey) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        return (userId != null ? "user:" + userId : "session:" + sessionId) + ":" + idempotencyKey;
+    }
+
+    public String hash(CreateOrderRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(jsonMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Response of an earlier request with this key: from memory, otherwise one primary-key lookup
+     */
+    public Optional<OrderDTO> find(String key, String requestHash) {
+        Optional<StoredOrder> cached = responses.get(key);
+        if (cached.isPresent()) {
+            memoryHits.increment();
+            return Optional.of(cached.get().verify(requestHash));
+        }
+
+        long stamp = responses.stamp();
+        Optional<IdempotencyRecord> record = repository.findLive(key, LocalDateTime.now())
+                .filter(r -> r.getResponse() != null);
+        if (record.isEmpty()) {
+            return Optional.empty();
+        }
+        StoredOrder stored = new StoredOrder(record.get().getRequestHash(),
+                jsonMapper.readValue(record.get().getResponse(), OrderDTO.class));
+        responses.put(key, stored, stamp);
+        databaseHits.increment();
+        log.debug("Replaying order {} for idempotency key {}", stored.order().getId(), key);
+        return Optional.of(stored.verify(requestHash));
+    }
+
+    /**
+     * Claim the key in the current transaction. False when another request holds it;
+     * that request has committed by the time this returns, so {@link #find} sees its response.
+     */
+    public boolean claim(String key, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        return repository.claim(key, requestHash, now, now.plusHours(ttlHours)) > 0;
+    }
+
+    /**
+     * Store the response with the current transaction and cache it once that commits
+     */
+    public void complete(String key, String requestHash, OrderDTO order) {
+        repository.complete(key, jsonMapper.writeValueAsString(order));
+        long stamp = responses.stamp();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                responses.put(key, new StoredOrder(requestHash, order), stamp);
+            }
+        });
+    }
+
+    /**
+     * Delete at most limit expired keys
+     */
+    @Transactional
+    public int purgeExpired(int limit) {
+        return repository.deleteExpired(LocalDateTime.now(), limit);
+    }
+
+    private record StoredOrder(String requestHash, OrderDTO order) {
+
+        OrderDTO verify(String requestHash) {
+            if (!this.requestHash.equals(requestHash)) {
+                throw new ConflictException("Idempotency-Key was already used for a different request");
+            }
+            return order;
+        }
+    }
+}
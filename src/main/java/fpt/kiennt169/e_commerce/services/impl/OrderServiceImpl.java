@@ -1,29 +1,49 @@
 package fpt.kiennt169.e_commerce.services.impl;
 
+import fpt.kiennt169.e_commerce.dtos.CursorPageResponse;
+import fpt.kiennt169.e_commerce.dtos.order.BulkOrderStatusResultDTO;
+import fpt.kiennt169.e_commerce.dtos.order.BulkUpdateOrderStatusRequest;
 import fpt.kiennt169.e_commerce.dtos.order.CreateOrderRequest;
 import fpt.kiennt169.e_commerce.dtos.order.OrderDTO;
 import fpt.kiennt169.e_commerce.dtos.order.OrderListDTO;
+import fpt.kiennt169.e_commerce.dtos.order.OrderStatusResultDTO;
 import fpt.kiennt169.e_commerce.dtos.order.UpdateOrderStatusRequest;
 import fpt.kiennt169.e_commerce.entities.*;
 import fpt.kiennt169.e_commerce.enums.OrderStatus;
 import fpt.kiennt169.e_commerce.enums.PaymentMethod;
 import fpt.kiennt169.e_commerce.enums.PaymentStatus;
 import fpt.kiennt169.e_commerce.exceptions.BadRequestException;
+import fpt.kiennt169.e_commerce.exceptions.BaseException;
+import fpt.kiennt169.e_commerce.exceptions.ConflictException;
 import fpt.kiennt169.e_commerce.exceptions.ForbiddenException;
 import fpt.kiennt169.e_commerce.exceptions.ResourceNotFoundException;
 import fpt.kiennt169.e_commerce.mappers.OrderMapper;
 import fpt.kiennt169.e_commerce.repositories.*;
+import fpt.kiennt169.e_commerce.repositories.projections.OrderStatusRef;
+import fpt.kiennt169.e_commerce.repositories.projections.OrderSummary;
 import fpt.kiennt169.e_commerce.services.InventoryService;
 import fpt.kiennt169.e_commerce.services.OrderService;
-import fpt.kiennt169.e_commerce.services.EmailService;
+import fpt.kiennt169.e_commerce.services.OutboxService;
+import fpt.kiennt169.e_commerce.util.Money;
+import fpt.kiennt169.e_commerce.util.OrderCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -31,25 +51,43 @@ import java.math.BigDecimal;
 public class OrderServiceImpl implements OrderService {
 
     private static final String ORDER_ENTITY = "Order";
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
     
     private final OrderRepository orderRepository;
     private final CartRepository cartRepository;
     private final UserRepository userRepository;
     private final InventoryService inventoryService;
-    private final EmailService emailService;
+    private final OutboxService outboxService;
     private final OrderMapper orderMapper;
+    private final CartCache cartCache;
+    private final OrderIdempotency idempotency;
 
     @Override
     @Transactional
-    public OrderDTO createOrder(Long userId, String sessionId, CreateOrderRequest request) {
+    public OrderDTO createOrder(Long userId, String sessionId, CreateOrderRequest request, String idempotencyKey) {
         log.debug("Creating order for userId={}, sessionId={}", userId, sessionId);
 
+        String dedupKey = null;
+        String requestHash = null;
+        if (idempotencyKey != null) {
+            dedupKey = OrderIdempotency.key(userId, sessionId, idempotencyKey);
+            requestHash = idempotency.hash(request);
+            Optional<OrderDTO> previous = idempotency.find(dedupKey, requestHash);
+            if (previous.isPresent()) {
+                return previous.get();
+            }
+            if (!idempotency.claim(dedupKey, requestHash)) {
+                return idempotency.find(dedupKey, requestHash)
+                        .orElseThrow(() -> new ConflictException("A request with this Idempotency-Key is already in progress"));
+            }
+        }
+
         Cart cart;
         if (userId != null) {
-            cart = cartRepository.findByUserId(userId)
+            cart = cartRepository.findWithVariantsByUserId(userId)
                     .orElseThrow(() -> new ResourceNotFoundException("Cart", "userId", userId));
         } else {
-            cart = cartRepository.findBySessionId(sessionId)
+            cart = cartRepository.findWithVariantsBySessionId(sessionId)
                     .orElseThrow(() -> new ResourceNotFoundException("Cart", "sessionId", sessionId));
         }
 
@@ -74,7 +112,8 @@ public class OrderServiceImpl implements OrderService {
                 .status(OrderStatus.PENDING)
                 .build();
 
-        BigDecimal totalAmount = BigDecimal.ZERO;
+        long totalAmount = 0;
+        Map<Long, Integer> expectedStock = new HashMap<>();
         for (CartItem cartItem : cart.getItems()) {
             ProductVariant variant = cartItem.getProductVariant();
             BigDecimal price = variant.getPrice();
@@ -87,31 +126,39 @@ public class OrderServiceImpl implements OrderService {
                     .build();
 
             order.addItem(orderItem);
-            totalAmount = totalAmount.add(price.multiply(BigDecimal.valueOf(cartItem.getQuantity())));
+            expectedStock.merge(variant.getId(), cartItem.getQuantity(), Integer::sum);
+            totalAmount = Math.addExact(totalAmount, Money.of(price).times(cartItem.getQuantity()).minorUnits());
         }
 
-        order.setTotalAmount(totalAmount);
+        order.setTotalAmount(Money.toBigDecimal(totalAmount));
 
         String reservationSessionId = request.getReservationId();
         if (reservationSessionId == null) {
             reservationSessionId = sessionId != null ? sessionId : "user-" + userId;
         }
         
-        inventoryService.confirmStock(reservationSessionId);
+        Map<Long, Integer> confirmedStock = inventoryService.confirmStock(reservationSessionId);
+        if (!confirmedStock.equals(expectedStock)) {
+            log.warn("Reservation {} does not match cart: reserved={}, cart={}",
+                    reservationSessionId, confirmedStock, expectedStock);
+            throw new BadRequestException("Reserved stock does not match the cart, please checkout again");
+        }
 
         order = orderRepository.save(order);
 
         cart.clearItems();
         cartRepository.save(cart);
+        cartCache.invalidate(userId, sessionId);
 
-        try {
-            emailService.sendOrderConfirmation(order);
-        } catch (Exception e) {
-            log.warn("Failed to send order confirmation email for order: {}", order.getId(), e);
+        outboxService.enqueueOrderConfirmation(order);
+
+        OrderDTO created = orderMapper.toDTO(order);
+        if (dedupKey != null) {
+            idempotency.complete(dedupKey, requestHash, created);
         }
 
         log.info("Order created: id={}", order.getId());
-        return orderMapper.toDTO(order);
+        return created;
     }
 
     @Override
@@ -138,17 +185,48 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional(readOnly = true)
     public Page<OrderListDTO> getUserOrders(Long userId, Pageable pageable) {
-        return orderRepository.findByUserIdOrderByCreatedAtDesc(userId, pageable)
+        return orderRepository.findUserOrderSummaries(userId, pageable)
                 .map(orderMapper::toListDTO);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<OrderListDTO> getAllOrders(Pageable pageable) {
-        return orderRepository.findAllByOrderByCreatedAtDesc(pageable)
+        return orderRepository.findOrderSummaries(pageable)
                 .map(orderMapper::toListDTO);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageResponse<OrderListDTO> getUserOrders(Long userId, String cursor, int size) {
+        size = Math.clamp(size, 1, MAX_CURSOR_PAGE_SIZE);
+        Limit limit = Limit.of(size + 1);
+        OrderCursor after = cursor != null ? OrderCursor.decode(cursor) : null;
+        List<OrderSummary> orders = after == null
+                ? orderRepository.findUserOrdersFirst(userId, limit)
+                : orderRepository.findUserOrdersAfter(userId, after.createdAt(), after.id(), limit);
+        return CursorPageResponse.of(orderMapper.toListDTOs(orders), size, OrderServiceImpl::cursorOf);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageResponse<OrderListDTO> getAllOrders(OrderStatus status, String cursor, int size) {
+        size = Math.clamp(size, 1, MAX_CURSOR_PAGE_SIZE);
+        Limit limit = Limit.of(size + 1);
+        OrderCursor after = cursor != null ? OrderCursor.decode(cursor) : null;
+        List<OrderSummary> orders;
+        if (status != null) {
+            orders = after == null
+                    ? orderRepository.findOrdersByStatusFirst(status, limit)
+                    : orderRepository.findOrdersByStatusAfter(status, after.createdAt(), after.id(), limit);
+        } else {
+            orders = after == null
+                    ? orderRepository.findOrdersFirst(limit)
+                    : orderRepository.findOrdersAfter(after.createdAt(), after.id(), limit);
+        }
+        return CursorPageResponse.of(orderMapper.toListDTOs(orders), size, OrderServiceImpl::cursorOf);
+    }
+
     @Override
     @Transactional
     public OrderDTO updateOrderStatus(String orderId, UpdateOrderStatusRequest request) {
@@ -162,28 +240,92 @@ public class OrderServiceImpl implements OrderService {
         order = orderRepository.save(order);
 
         log.info("Order status updated: id={}, status={}", orderId, request.getStatus());
-        
-        try {
-            emailService.sendOrderStatusUpdate(order, oldStatus.name(), request.getStatus().name());
-        } catch (Exception e) {
-            log.warn("Failed to send status update email for order: {}", order.getId(), e);
-        }
-        
+        outboxService.enqueueOrderStatusUpdate(order, oldStatus, request.getStatus());
+
         return orderMapper.toDTO(order);
     }
 
+    /**
+     * Read the current status of every order in one query, then apply one guarded UPDATE per
+     * source status that may move to the target. Orders changed concurrently fail with CONFLICT.
+     */
+    @Override
+    @Transactional
+    public BulkOrderStatusResultDTO bulkUpdateOrderStatus(BulkUpdateOrderStatusRequest request) {
+        OrderStatus target = request.getStatus();
+        List<String> orderIds = request.getOrderIds().stream().distinct().toList();
+
+        Map<String, OrderStatus> currentStatuses = new HashMap<>();
+        for (OrderStatusRef ref : orderRepository.findStatusesByIdIn(orderIds)) {
+            currentStatuses.put(ref.getId(), ref.getStatus());
+        }
+        Map<OrderStatus, List<String>> bySource = currentStatuses.entrySet().stream()
+                .filter(entry -> isValidTransition(entry.getValue(), target))
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> updated = new HashSet<>();
+        bySource.forEach((source, ids) -> {
+            List<String> moved = orderRepository.transitionStatus(ids, source.name(), target.name(), now);
+            outboxService.enqueueOrderStatusUpdates(moved, source, target);
+            updated.addAll(moved);
+            log.debug("Moved {} of {} orders from {} to {}", moved.size(), ids.size(), source, target);
+        });
+
+        List<OrderStatusResultDTO> results = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            OrderStatus current = currentStatuses.get(orderId);
+            if (updated.contains(orderId)) {
+                results.add(OrderStatusResultDTO.builder().orderId(orderId).previousStatus(current).success(true).build());
+            } else if (current == null) {
+                results.add(failedTransition(orderId, null, new ResourceNotFoundException(ORDER_ENTITY, "id", orderId)));
+            } else if (!isValidTransition(current, target)) {
+                results.add(failedTransition(orderId, current, new BadRequestException(
+                        String.format("Invalid status transition: %s -> %s", current, target))));
+            } else {
+                results.add(failedTransition(orderId, current,
+                        new ConflictException("Order status was changed by another request")));
+            }
+        }
+
+        log.info("Bulk status update to {}: {} of {} orders updated", target, updated.size(), orderIds.size());
+        return BulkOrderStatusResultDTO.builder()
+                .status(target)
+                .results(results)
+                .succeeded(updated.size())
+                .failed(orderIds.size() - updated.size())
+                .build();
+    }
+
+    private static String cursorOf(OrderListDTO order) {
+        return new OrderCursor(order.getCreatedAt(), order.getId()).encode();
+    }
+
+    private OrderStatusResultDTO failedTransition(String orderId, OrderStatus current, BaseException error) {
+        return OrderStatusResultDTO.builder()
+                .orderId(orderId)
+                .previousStatus(current)
+                .success(false)
+                .errorCode(error.getErrorCode())
+                .message(error.getMessage())
+                .build();
+    }
+
     private void validateStatusTransition(OrderStatus current, OrderStatus target) {
-        boolean valid = switch (current) {
+        if (!isValidTransition(current, target)) {
+            throw new BadRequestException(
+                    String.format("Invalid status transition: %s -> %s", current, target));
+        }
+    }
+
+    private boolean isValidTransition(OrderStatus current, OrderStatus target) {
+        return switch (current) {
             case PENDING -> target == OrderStatus.CONFIRMED || target == OrderStatus.CANCELLED;
             case CONFIRMED -> target == OrderStatus.PROCESSING || target == OrderStatus.CANCELLED;
             case PROCESSING -> target == OrderStatus.SHIPPED || target == OrderStatus.CANCELLED;
             case SHIPPED -> target == OrderStatus.DELIVERED;
             case DELIVERED, CANCELLED -> false;
         };
-
-        if (!valid) {
-            throw new BadRequestException(
-                    String.format("Invalid status transition: %s -> %s", current, target));
-        }
     }
 }
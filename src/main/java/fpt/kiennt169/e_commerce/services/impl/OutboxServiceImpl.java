@@ -0,0 +1,208 @@
+package fpt.kiennt169.e_commerce.services.impl;
+
+import fpt.kiennt169.e_commerce.entities.Order;
+import fpt.kiennt169.e_commerce.entities.OutboxEvent;
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+import fpt.kiennt169.e_commerce.enums.OutboxEventType;
+import fpt.kiennt169.e_commerce.repositories.OrderRepository;
+import fpt.kiennt169.e_commerce.repositories.OutboxEventRepository;
+import fpt.kiennt169.e_commerce.repositories.projections.ClaimedOutboxEvent;
+import fpt.kiennt169.e_commerce.services.EmailService;
+import fpt.kiennt169.e_commerce.services.OutboxService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional outbox: emails are recorded in the transaction that causes them and sent by
+ * {@link #dispatchDue} after it commits, so no request holds a connection or row locks during an SMTP round trip.
+ * Delivery is at least once - an event whose send succeeded but could not be marked SENT is sent again.
+ */
+@Service
+@Slf4j
+public class OutboxServiceImpl implements OutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final OutboxEventRepository outboxRepository;
+    private final OrderRepository orderRepository;
+    private final EmailService emailService;
+    private final JsonMapper jsonMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+
+    @Value("${outbox.dispatch.lease-ms:60000}")
+    private long leaseMillis;
+
+    @Value("${outbox.dispatch.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${outbox.dispatch.backoff-ms:5000}")
+    private long backoffMillis;
+
+    @Value("${outbox.dispatch.max-backoff-ms:900000}")
+    private long maxBackoffMillis;
+
+    public OutboxServiceImpl(OutboxEventRepository outboxRepository, OrderRepository orderRepository,
+                             EmailService emailService, JsonMapper jsonMapper,
+                             TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.orderRepository = orderRepository;
+        this.emailService = emailService;
+        this.jsonMapper = jsonMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.sentCounter = Counter.builder("outbox.events.dispatched").tag("result", "sent").register(meterRegistry);
+        this.retriedCounter = Counter.builder("outbox.events.dispatched").tag("result", "retry").register(meterRegistry);
+        this.failedCounter = Counter.builder("outbox.events.dispatched").tag("result", "failed").register(meterRegistry);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueOrderConfirmation(Order order) {
+        enqueue(OutboxEventType.ORDER_CONFIRMATION, order.getId(), null);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueOrderStatusUpdate(Order order, OrderStatus oldStatus, OrderStatus newStatus) {
+        enqueue(OutboxEventType.ORDER_STATUS_UPDATE, order.getId(),
+                jsonMapper.writeValueAsString(new StatusChange(oldStatus, newStatus)));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueOrderStatusUpdates(Collection<String> orderIds, OrderStatus oldStatus, OrderStatus newStatus) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        outboxRepository.insertForOrders(OutboxEventType.ORDER_STATUS_UPDATE.name(), orderIds,
+                jsonMapper.writeValueAsString(new StatusChange(oldStatus, newStatus)), LocalDateTime.now());
+    }
+
+    /**
+     * Claim due events in one short transaction, load their orders in one query,
+     * send outside any transaction and record the outcomes in one more.
+     * Sending stops once the lease has run out, the unsent rest is claimed again by the next dispatch;
+     * outcomes are recorded only for events still holding this claim's lease.
+     */
+    @Override
+    public int dispatchDue(int batchSize) {
+        // PostgreSQL keeps microseconds, the lease must compare equal when the outcomes are recorded
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        LocalDateTime leaseUntil = now.plusNanos(leaseMillis * 1_000_000);
+        List<ClaimedOutboxEvent> claimed = transactionTemplate.execute(status ->
+                outboxRepository.claimDue(now, leaseUntil, batchSize));
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
+
+        List<String> orderIds = claimed.stream().map(ClaimedOutboxEvent::getAggregateId).distinct().toList();
+        Map<String, Order> orders = transactionTemplate.execute(status ->
+                orderRepository.findWithItemsByIdIn(orderIds).stream()
+                        .collect(Collectors.toMap(Order::getId, Function.identity())));
+
+        List<Long> delivered = new ArrayList<>();
+        List<Failure> failures = new ArrayList<>();
+        for (ClaimedOutboxEvent event : claimed) {
+            if (!LocalDateTime.now().isBefore(leaseUntil)) {
+                log.warn("Outbox lease ran out after {} of {} events, leaving the rest to the next dispatch",
+                        delivered.size() + failures.size(), claimed.size());
+                break;
+            }
+            try {
+                deliver(event, orders.get(event.getAggregateId()));
+                delivered.add(event.getId());
+            } catch (Exception e) {
+                log.warn("Outbox event {} ({}) failed on attempt {}: {}",
+                        event.getId(), event.getType(), event.getAttempts(), e.getMessage());
+                failures.add(new Failure(event, e));
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime finishedAt = LocalDateTime.now();
+            if (!delivered.isEmpty()) {
+                int marked = outboxRepository.markSent(delivered, leaseUntil, finishedAt);
+                if (marked < delivered.size()) {
+                    log.warn("{} sent outbox events had already been claimed again", delivered.size() - marked);
+                }
+            }
+            failures.forEach(failure -> retryLater(failure, leaseUntil, finishedAt));
+        });
+        sentCounter.increment(delivered.size());
+        return claimed.size();
+    }
+
+    @Override
+    @Transactional
+    public int purgeSent(LocalDateTime cutoff, int limit) {
+        return outboxRepository.deleteSent(cutoff, limit);
+    }
+
+    private void enqueue(OutboxEventType type, String aggregateId, String payload) {
+        outboxRepository.save(OutboxEvent.builder()
+                .type(type)
+                .aggregateId(aggregateId)
+                .payload(payload)
+                .nextAttemptAt(LocalDateTime.now())
+                .build());
+    }
+
+    private void deliver(ClaimedOutboxEvent event, Order order) {
+        if (order == null) {
+            log.warn("Order {} of outbox event {} no longer exists, dropping the event", event.getAggregateId(), event.getId());
+            return;
+        }
+        switch (OutboxEventType.valueOf(event.getType())) {
+            case ORDER_CONFIRMATION -> emailService.sendOrderConfirmation(order);
+            case ORDER_STATUS_UPDATE -> {
+                StatusChange change = jsonMapper.readValue(event.getPayload(), StatusChange.class);
+                emailService.sendOrderStatusUpdate(order, change.oldStatus().name(), change.newStatus().name());
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff from backoffMillis up to maxBackoffMillis, FAILED after maxAttempts
+     */
+    private void retryLater(Failure failure, LocalDateTime leaseUntil, LocalDateTime now) {
+        ClaimedOutboxEvent event = failure.event();
+        String error = failure.error().toString();
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+
+        if (event.getAttempts() >= maxAttempts) {
+            outboxRepository.markFailed(event.getId(), leaseUntil, error, now);
+            failedCounter.increment();
+            log.error("Outbox event {} ({}) failed after {} attempts", event.getId(), event.getType(), event.getAttempts());
+            return;
+        }
+        long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(event.getAttempts() - 1, 20));
+        outboxRepository.reschedule(event.getId(), leaseUntil, now.plusNanos(delay * 1_000_000), error, now);
+        retriedCounter.increment();
+    }
+
+    private record StatusChange(OrderStatus oldStatus, OrderStatus newStatus) {
+    }
+
+    private record Failure(ClaimedOutboxEvent event, Exception error) {
+    }
+}
@@ -3,13 +3,17 @@ package fpt.kiennt169.e_commerce.services.impl;
 import fpt.kiennt169.e_commerce.dtos.PageResponse;
 import fpt.kiennt169.e_commerce.dtos.product.*;
 import fpt.kiennt169.e_commerce.entities.Product;
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.events.CatalogChangedEvent;
 import fpt.kiennt169.e_commerce.exceptions.ResourceNotFoundException;
 import fpt.kiennt169.e_commerce.mappers.ProductMapper;
 import fpt.kiennt169.e_commerce.repositories.ProductRepository;
+import fpt.kiennt169.e_commerce.services.InventoryService;
 import fpt.kiennt169.e_commerce.services.ProductService;
 import fpt.kiennt169.e_commerce.specifications.ProductSpecification;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -17,6 +21,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -25,19 +33,28 @@ public class ProductServiceImpl implements ProductService {
 
     private final ProductRepository productRepository;
     private final ProductMapper productMapper;
+    private final InventoryService inventoryService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public void publishCatalogChange(Collection<Long> productIds) {
+        log.info("Catalog changed: productIds={}", productIds);
+        eventPublisher.publishEvent(new CatalogChangedEvent(Set.copyOf(productIds)));
+    }
 
     @Override
     @Transactional(readOnly = true)
     public ProductDTO getProductById(Long id) {
         Product product = findProductById(id);
-        return productMapper.toDTO(product);
+        List<Long> variantIds = product.getVariants().stream().map(ProductVariant::getId).toList();
+        return productMapper.toDTO(product, inventoryService.getAvailableStock(variantIds));
     }
 
     @Override
     @Transactional(readOnly = true)
     public PageResponse<ProductListDTO> getAllProducts(Pageable pageable) {
         Page<Product> page = productRepository.findByIsActiveTrue(pageable);
-        return PageResponse.from(page.map(productMapper::toListDTO));
+        return toListPage(page);
     }
 
     @Override
@@ -64,7 +81,16 @@ public class ProductServiceImpl implements ProductService {
         
         log.debug("Found {} products matching filters", page.getTotalElements());
         
-        return PageResponse.from(page.map(productMapper::toListDTO));
+        return toListPage(page);
+    }
+
+    /**
+     * Map a page of products with one availability query for the whole page
+     */
+    private PageResponse<ProductListDTO> toListPage(Page<Product> page) {
+        List<Long> productIds = page.getContent().stream().map(Product::getId).toList();
+        Map<Long, Integer> productStock = inventoryService.getAvailableStockByProduct(productIds);
+        return PageResponse.from(page.map(product -> productMapper.toListDTO(product, productStock)));
     }
 
     private Product findProductById(Long id) {
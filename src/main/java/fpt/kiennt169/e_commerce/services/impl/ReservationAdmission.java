@@ -0,0 +1,187 @@
+package fpt.kiennt169.e_commerce.services.impl;
+
+import fpt.kiennt169.e_commerce.exceptions.InsufficientStockException;
+import fpt.kiennt169.e_commerce.exceptions.TooManyRequestsException;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-variant admission queue in front of reservations. Only a few requests per variant
+ * may hold a connection and wait on its row lock at a time, the rest wait here (bounded)
+ * without holding a connection. Requests are turned away up front when the variant's queue is full,
+ * or when the quantity already queued covers the remaining stock.
+ * Bucketed variants get one set of permits per stock bucket, since each bucket is its own row lock.
+ */
+@Component
+@Slf4j
+public class ReservationAdmission {
+
+    private final StockLedger stockLedger;
+    private final ProductVariantRepository variantRepository;
+    private final Map<Long, Gate> gates = new ConcurrentHashMap<>();
+    private final Counter rejectedNoStock;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    @Value("${inventory.reservation.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.reservation.admission.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${inventory.reservation.admission.max-waiters:64}")
+    private int maxWaiters;
+
+    @Value("${inventory.reservation.admission.wait-timeout-ms:2000}")
+    private long waitTimeoutMillis;
+
+    public ReservationAdmission(StockLedger stockLedger, ProductVariantRepository variantRepository,
+                                MeterRegistry meterRegistry) {
+        this.stockLedger = stockLedger;
+        this.variantRepository = variantRepository;
+        Gauge.builder("inventory.reservations.admission.queued", gates, ReservationAdmission::totalQueued)
+                .description("Reservation requests admitted or waiting, over all variants")
+                .register(meterRegistry);
+        Gauge.builder("inventory.reservations.admission.queued.max", gates, ReservationAdmission::maxQueued)
+                .description("Longest reservation queue of a single variant")
+                .register(meterRegistry);
+        this.rejectedNoStock = rejectedCounter(meterRegistry, "no_stock");
+        this.rejectedQueueFull = rejectedCounter(meterRegistry, "queue_full");
+        this.rejectedTimeout = rejectedCounter(meterRegistry, "timeout");
+    }
+
+    /**
+     * Wait for a turn on the variant. Every successful call must be paired with {@link Ticket#close()}.
+     */
+    public Ticket admit(Long variantId, int quantity) {
+        if (!enabled) {
+            return Ticket.NONE;
+        }
+        Gate gate = gates.get(variantId);
+        if (gate == null) {
+            int permits = maxConcurrent * Math.max(1, variantRepository.findStockBuckets(variantId).orElse(0));
+            gate = gates.computeIfAbsent(variantId, id -> new Gate(permits));
+        }
+
+        int queuedQuantity = gate.quantity.addAndGet(quantity);
+        OptionalInt available = stockLedger.getAvailable(variantId);
+        if (available.isPresent() && queuedQuantity > available.getAsInt()) {
+            gate.quantity.addAndGet(-quantity);
+            rejectedNoStock.increment();
+            throw new InsufficientStockException(
+                "Insufficient stock", quantity, Math.max(0, available.getAsInt() - (queuedQuantity - quantity)));
+        }
+
+        if (gate.requests.incrementAndGet() > maxWaiters + gate.size) {
+            gate.leave(quantity);
+            rejectedQueueFull.increment();
+            log.warn("Reservation queue full for variant {}", variantId);
+            throw new TooManyRequestsException("Too many concurrent reservations for this product, please retry");
+        }
+
+        boolean acquired;
+        try {
+            acquired = gate.permits.tryAcquire(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            gate.leave(quantity);
+            rejectedTimeout.increment();
+            throw new TooManyRequestsException("Too many concurrent reservations for this product, please retry");
+        }
+        Gate admitted = gate;
+        return () -> {
+            admitted.permits.release();
+            admitted.leave(quantity);
+        };
+    }
+
+    /**
+     * Admit several variants in ascending id order, giving back what was taken if one is turned away
+     */
+    public Ticket admitAll(Map<Long, Integer> quantities) {
+        List<Ticket> tickets = new ArrayList<>(quantities.size());
+        try {
+            quantities.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> tickets.add(admit(entry.getKey(), entry.getValue())));
+        } catch (RuntimeException e) {
+            closeAll(tickets);
+            throw e;
+        }
+        return () -> closeAll(tickets);
+    }
+
+    /**
+     * Drop the variant's gate so it is sized again on the next reservation (after its buckets changed)
+     */
+    public void forget(Long variantId) {
+        gates.remove(variantId);
+    }
+
+    private static void closeAll(Collection<Ticket> tickets) {
+        tickets.forEach(Ticket::close);
+    }
+
+    private static double totalQueued(Map<Long, Gate> gates) {
+        return gates.values().stream().mapToInt(gate -> gate.requests.get()).sum();
+    }
+
+    private static double maxQueued(Map<Long, Gate> gates) {
+        return gates.values().stream().mapToInt(gate -> gate.requests.get()).max().orElse(0);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("inventory.reservations.admission.rejected")
+                .description("Reservation requests turned away before reaching the database")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A place in a variant's queue, closed once the reservation transaction has finished
+     */
+    @FunctionalInterface
+    public interface Ticket extends AutoCloseable {
+
+        Ticket NONE = () -> { };
+
+        @Override
+        void close();
+    }
+
+    private static final class Gate {
+
+        private final int size;
+        private final Semaphore permits;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger quantity = new AtomicInteger();
+
+        private Gate(int size) {
+            this.size = size;
+            this.permits = new Semaphore(size, true);
+        }
+
+        private void leave(int released) {
+            requests.decrementAndGet();
+            quantity.addAndGet(-released);
+        }
+    }
+}
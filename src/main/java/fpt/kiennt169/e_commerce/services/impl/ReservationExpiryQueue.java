@@ -0,0 +1,93 @@
+package fpt.kiennt169.e_commerce.services.impl;
+
+import fpt.kiennt169.e_commerce.repositories.InventoryReservationRepository;
+import fpt.kiennt169.e_commerce.repositories.projections.ReservationDeadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the deadline of every active reservation created on this node so it can be expired
+ * as soon as it is due, instead of waiting for the next database sweep.
+ * The queue is not durable - after a restart it is seeded from the ACTIVE reservations,
+ * and anything it misses is still caught by the sweep.
+ */
+@Component
+@Slf4j
+public class ReservationExpiryQueue {
+
+    private final InventoryReservationRepository reservationRepository;
+    private final DelayQueue<PendingExpiry> queue = new DelayQueue<>();
+
+    @Value("${inventory.reservation.expiry-queue.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.reservation.expiry-queue.capacity:100000}")
+    private int capacity;
+
+    public ReservationExpiryQueue(InventoryReservationRepository reservationRepository, MeterRegistry meterRegistry) {
+        this.reservationRepository = reservationRepository;
+        Gauge.builder("inventory.reservations.expiry.queue.size", queue, DelayQueue::size)
+                .description("Reservations waiting for their deadline")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void seed() {
+        if (!enabled) {
+            return;
+        }
+        List<ReservationDeadline> active = reservationRepository.findActiveDeadlines();
+        active.forEach(deadline -> schedule(deadline.getId(), deadline.getExpiryTime()));
+        log.info("Reservation expiry queue seeded with {} active reservations", queue.size());
+    }
+
+    public void schedule(String reservationId, LocalDateTime expiryTime) {
+        if (!enabled) {
+            return;
+        }
+        if (queue.size() >= capacity) {
+            log.warn("Reservation expiry queue is full ({}), {} left to the sweep", capacity, reservationId);
+            return;
+        }
+        // round up: expiry_time keeps microseconds, the entry must not become due before it
+        long deadline = expiryTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + 1;
+        queue.add(new PendingExpiry(reservationId, deadline));
+    }
+
+    /**
+     * Remove and return up to maxBatch reservation ids whose deadline has passed
+     */
+    public List<String> drainDue(int maxBatch) {
+        List<PendingExpiry> due = new ArrayList<>();
+        queue.drainTo(due, maxBatch);
+        return due.stream().map(PendingExpiry::reservationId).toList();
+    }
+
+    record PendingExpiry(String reservationId, long deadlineMillis) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineMillis, ((PendingExpiry) other).deadlineMillis);
+        }
+    }
+}
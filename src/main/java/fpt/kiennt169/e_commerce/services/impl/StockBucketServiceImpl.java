@@ -0,0 +1,109 @@
+package fpt.kiennt169.e_commerce.services.impl;
+
+import fpt.kiennt169.e_commerce.dtos.inventory.StockBucketsDTO;
+import fpt.kiennt169.e_commerce.entities.StockBucket;
+import fpt.kiennt169.e_commerce.exceptions.ResourceNotFoundException;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.repositories.StockBucketRepository;
+import fpt.kiennt169.e_commerce.repositories.projections.VariantStockLevel;
+import fpt.kiennt169.e_commerce.services.InventoryService;
+import fpt.kiennt169.e_commerce.services.StockBucketService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stock buckets hold sellable stock of a hot variant that has been handed out of the variant row.
+ * The variant's reserved_quantity counts it, so the variant row alone never oversells;
+ * a bucket's quantity becomes a normal reservation when it is taken, and goes back to the bucket on release.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockBucketServiceImpl implements StockBucketService {
+
+    private final StockBucketRepository bucketRepository;
+    private final ProductVariantRepository variantRepository;
+    private final InventoryService inventoryService;
+    private final ReservationAdmission admission;
+
+    @Override
+    @Transactional(readOnly = true)
+    public StockBucketsDTO getBuckets(Long variantId) {
+        int stockBuckets = variantRepository.findStockBuckets(variantId)
+                .orElseThrow(() -> new ResourceNotFoundException("ProductVariant", "id", variantId));
+        return toDTO(variantId, stockBuckets, bucketRepository.findByVariantIdOrderByBucketNo(variantId));
+    }
+
+    @Override
+    @Transactional
+    public StockBucketsDTO configureBuckets(Long variantId, int buckets) {
+        log.debug("Configuring stock buckets: variantId={}, buckets={}", variantId, buckets);
+
+        VariantStockLevel level = variantRepository.lockStockLevels(List.of(variantId)).stream()
+                .findFirst()
+                .orElseThrow(() -> new ResourceNotFoundException("ProductVariant", "id", variantId));
+        List<StockBucket> current = bucketRepository.lockByVariantId(variantId);
+
+        int held = current.stream().mapToInt(StockBucket::getAvailable).sum();
+        int sellable = level.getStockQuantity() - level.getReservedQuantity() + held;
+        int allocated = buckets > 0 ? sellable : 0;
+
+        List<StockBucket> kept = new ArrayList<>();
+        List<StockBucket> removed = new ArrayList<>();
+        current.forEach(bucket -> (bucket.getBucketNo() < buckets ? kept : removed).add(bucket));
+        for (int bucketNo = kept.size(); bucketNo < buckets; bucketNo++) {
+            kept.add(StockBucket.builder()
+                    .variant(variantRepository.getReferenceById(variantId))
+                    .bucketNo(bucketNo)
+                    .build());
+        }
+        for (StockBucket bucket : kept) {
+            int bucketNo = bucket.getBucketNo();
+            bucket.setAvailable(allocated / buckets + (bucketNo < allocated % buckets ? 1 : 0));
+        }
+
+        bucketRepository.deleteAll(removed);
+        bucketRepository.saveAll(kept);
+        variantRepository.adjustReservedQuantity(variantId, allocated - held);
+        variantRepository.updateStockBuckets(variantId, buckets);
+        inventoryService.invalidateAvailability(List.of(variantId));
+        admission.forget(variantId);
+
+        log.info("Stock buckets configured: variantId={}, buckets={}, allocated={}", variantId, buckets, allocated);
+        return toDTO(variantId, buckets, kept);
+    }
+
+    @Override
+    @Transactional
+    public StockBucketsDTO rebalance(Long variantId) {
+        int stockBuckets = variantRepository.findStockBuckets(variantId)
+                .orElseThrow(() -> new ResourceNotFoundException("ProductVariant", "id", variantId));
+        return configureBuckets(variantId, stockBuckets);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Long> findVariantsToRebalance() {
+        return bucketRepository.findVariantsToRebalance();
+    }
+
+    private StockBucketsDTO toDTO(Long variantId, int stockBuckets, List<StockBucket> buckets) {
+        List<StockBucketsDTO.Bucket> items = buckets.stream()
+                .map(bucket -> StockBucketsDTO.Bucket.builder()
+                        .bucketNo(bucket.getBucketNo())
+                        .available(bucket.getAvailable())
+                        .build())
+                .toList();
+        return StockBucketsDTO.builder()
+                .variantId(variantId)
+                .stockBuckets(stockBuckets)
+                .totalAvailable(items.stream().mapToInt(StockBucketsDTO.Bucket::getAvailable).sum())
+                .buckets(items)
+                .build();
+    }
+}
@@ -0,0 +1,115 @@
+package fpt.kiennt169.e_commerce.services.impl;
+
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.repositories.projections.VariantStockLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process stock ledger: keeps stock / reserved / available per variant
+ * so availability checks do not have to SUM reservations in the database.
+ * The database stays the source of truth - the ledger is loaded from its current columns at startup
+ * and only receives deltas of committed inventory changes. Drift of reserved_quantity itself is
+ * repaired by {@link fpt.kiennt169.e_commerce.services.InventoryService#resyncReservedQuantities}.
+ * Entries live for a short TTL so changes made by other nodes or outside the inventory
+ * service are picked up, and can be invalidated explicitly.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StockLedger {
+
+    private final ProductVariantRepository variantRepository;
+
+    private final Map<Long, StockLevel> levels = new ConcurrentHashMap<>();
+
+    @Value("${inventory.stock-ledger.ttl-ms:5000}")
+    private long ttlMillis;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        Map<Long, StockLevel> snapshot = new HashMap<>();
+        for (VariantStockLevel row : variantRepository.findAllStockLevels()) {
+            snapshot.put(row.getVariantId(),
+                    new StockLevel(row.getStockQuantity(), row.getReservedQuantity(), expiresAt));
+        }
+
+        levels.clear();
+        levels.putAll(snapshot);
+        log.info("Stock ledger rebuilt: {} variants", snapshot.size());
+    }
+
+    public OptionalInt getAvailable(Long variantId) {
+        StockLevel level = levels.get(variantId);
+        if (level == null || level.isExpired(System.currentTimeMillis())) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(level.available());
+    }
+
+    /**
+     * Available stock of the given variants that have a live entry, misses are left out
+     */
+    public Map<Long, Integer> getAvailable(Collection<Long> variantIds) {
+        long now = System.currentTimeMillis();
+        Map<Long, Integer> available = new HashMap<>();
+        for (Long variantId : variantIds) {
+            StockLevel level = levels.get(variantId);
+            if (level != null && !level.isExpired(now)) {
+                available.put(variantId, level.available());
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Register a level read from the database. A live entry wins,
+     * since it may have received deltas after the caller's read.
+     */
+    public void load(Long variantId, int stock, int reserved) {
+        long now = System.currentTimeMillis();
+        levels.compute(variantId, (id, level) -> level == null || level.isExpired(now)
+                ? new StockLevel(stock, reserved, now + ttlMillis)
+                : level);
+    }
+
+    public void reserve(Long variantId, int quantity) {
+        levels.computeIfPresent(variantId, (id, level) -> new StockLevel(level.stock(), level.reserved() + quantity, level.expiresAt()));
+    }
+
+    public void release(Long variantId, int quantity) {
+        levels.computeIfPresent(variantId, (id, level) -> new StockLevel(level.stock(), level.reserved() - quantity, level.expiresAt()));
+    }
+
+    public void confirm(Long variantId, int quantity) {
+        levels.computeIfPresent(variantId, (id, level) -> new StockLevel(level.stock() - quantity, level.reserved() - quantity, level.expiresAt()));
+    }
+
+    public void evict(Collection<Long> variantIds) {
+        variantIds.forEach(levels::remove);
+    }
+
+    record StockLevel(int stock, int reserved, long expiresAt) {
+
+        int available() {
+            return stock - reserved;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package fpt.kiennt169.e_commerce.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small in-process cache with a TTL per entry and LRU eviction beyond maxEntries.
+ * Invalidation records the stamp of the key's slot in a fixed table outside the LRU map, so a value read
+ * from the database before the invalidation (tracked with {@link #stamp()}) cannot be put back afterwards,
+ * even when eviction or expiry has dropped the entry. Keys sharing a slot only cost each other a cache fill.
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final long ttlMillis;
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<K, Entry<V>> entries;
+    private final long[] invalidatedAt;
+    private long clearedAt;
+
+    public ExpiringLruCache(int maxEntries, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.invalidatedAt = new long[Integer.highestOneBit(Math.clamp(maxEntries, 1, 1 << 16) * 2 - 1)];
+    }
+
+    /**
+     * Take before reading the value from its source and pass to {@link #put}
+     */
+    public long stamp() {
+        return clock.incrementAndGet();
+    }
+
+    public synchronized Optional<V> get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.value());
+    }
+
+    /**
+     * Cache a value read at the given stamp, unless the key (or the whole cache) was invalidated since
+     */
+    public synchronized void put(K key, V value, long stamp) {
+        if (stamp < clearedAt || stamp < invalidatedAt[slot(key)]) {
+            return;
+        }
+        Entry<V> current = entries.get(key);
+        if (current != null && current.stamp() > stamp && !current.isExpired(System.currentTimeMillis())) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, stamp, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+        invalidatedAt[slot(key)] = stamp();
+    }
+
+    /**
+     * Drop every entry; values read before this call cannot be put back either
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        clearedAt = stamp();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private int slot(K key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (invalidatedAt.length - 1);
+    }
+
+    private record Entry<V>(V value, long stamp, long expiresAt) {
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package fpt.kiennt169.e_commerce.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amount of money as a long count of minor units (hundredths, the scale of the price columns).
+ * Pricing math on the hot path stays in long arithmetic; amounts become BigDecimal
+ * only when read from or written to the database and the JSON responses.
+ * Overflow throws instead of wrapping.
+ */
+public record Money(long minorUnits) {
+
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Exact conversion, amounts with more than two decimals are rejected
+     */
+    public static Money of(BigDecimal amount) {
+        if (amount == null) {
+            return null;
+        }
+        return new Money(amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+    }
+
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money times(int quantity) {
+        return new Money(Math.multiplyExact(minorUnits, quantity));
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return toBigDecimal(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
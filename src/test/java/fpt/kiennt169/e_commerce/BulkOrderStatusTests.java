@@ -0,0 +1,139 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.dtos.order.BulkOrderStatusResultDTO;
+import fpt.kiennt169.e_commerce.dtos.order.BulkUpdateOrderStatusRequest;
+import fpt.kiennt169.e_commerce.dtos.order.OrderStatusResultDTO;
+import fpt.kiennt169.e_commerce.entities.Order;
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+import fpt.kiennt169.e_commerce.enums.PaymentMethod;
+import fpt.kiennt169.e_commerce.repositories.OrderRepository;
+import fpt.kiennt169.e_commerce.services.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The bulk status update applies only valid transitions, reports every other order,
+ * and moves each order (with one status email) exactly once when two updates race.
+ * Needs the PostgreSQL database from docker-compose.
+ *
+ * Run: ./mvnw test -Dtest=BulkOrderStatusTests
+ */
+@SpringBootTest
+class BulkOrderStatusTests {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private String email;
+
+	@BeforeEach
+	void setUp() {
+		email = "bulk-" + UUID.randomUUID() + "@test.local";
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM outbox_events WHERE aggregate_id IN (SELECT id FROM orders WHERE customer_email = ?)", email);
+		jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+	}
+
+	@Test
+	void onlyValidTransitionsAreApplied() {
+		String pending = createOrder(OrderStatus.PENDING);
+		String confirmed = createOrder(OrderStatus.CONFIRMED);
+		String delivered = createOrder(OrderStatus.DELIVERED);
+		String missing = UUID.randomUUID().toString();
+
+		BulkOrderStatusResultDTO result = orderService.bulkUpdateOrderStatus(BulkUpdateOrderStatusRequest.builder()
+				.orderIds(List.of(pending, confirmed, delivered, missing, pending))
+				.status(OrderStatus.CONFIRMED)
+				.build());
+
+		Map<String, OrderStatusResultDTO> byId = result.getResults().stream()
+				.collect(Collectors.toMap(OrderStatusResultDTO::getOrderId, Function.identity()));
+		assertThat(result.getResults()).hasSize(4);
+		assertThat(result.getSucceeded()).isEqualTo(1);
+		assertThat(result.getFailed()).isEqualTo(3);
+		assertThat(byId.get(pending).isSuccess()).isTrue();
+		assertThat(byId.get(pending).getPreviousStatus()).isEqualTo(OrderStatus.PENDING);
+		assertThat(byId.get(confirmed).getErrorCode()).isEqualTo("BAD_REQUEST");
+		assertThat(byId.get(delivered).getErrorCode()).isEqualTo("BAD_REQUEST");
+		assertThat(byId.get(missing).getErrorCode()).isEqualTo("RESOURCE_NOT_FOUND");
+
+		assertThat(status(pending)).isEqualTo(OrderStatus.CONFIRMED);
+		assertThat(status(delivered)).isEqualTo(OrderStatus.DELIVERED);
+		assertThat(statusEmails(List.of(pending, confirmed, delivered))).isEqualTo(1);
+	}
+
+	@Test
+	void racingUpdatesMoveEachOrderOnce() throws Exception {
+		List<String> orderIds = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			orderIds.add(createOrder(OrderStatus.PENDING));
+		}
+		BulkUpdateOrderStatusRequest request = BulkUpdateOrderStatusRequest.builder()
+				.orderIds(orderIds)
+				.status(OrderStatus.CONFIRMED)
+				.build();
+
+		CountDownLatch startLatch = new CountDownLatch(1);
+		CompletableFuture<BulkOrderStatusResultDTO> first = CompletableFuture.supplyAsync(() -> update(startLatch, request));
+		CompletableFuture<BulkOrderStatusResultDTO> second = CompletableFuture.supplyAsync(() -> update(startLatch, request));
+		startLatch.countDown();
+
+		assertThat(first.get().getSucceeded() + second.get().getSucceeded()).isEqualTo(orderIds.size());
+		assertThat(orderIds).allSatisfy(id -> assertThat(status(id)).isEqualTo(OrderStatus.CONFIRMED));
+		assertThat(statusEmails(orderIds)).isEqualTo(orderIds.size());
+	}
+
+	private BulkOrderStatusResultDTO update(CountDownLatch startLatch, BulkUpdateOrderStatusRequest request) {
+		try {
+			startLatch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return orderService.bulkUpdateOrderStatus(request);
+	}
+
+	private String createOrder(OrderStatus status) {
+		return orderRepository.save(Order.builder()
+				.customerName("Bulk Test")
+				.customerEmail(email)
+				.shippingAddress("1 Test Street")
+				.paymentMethod(PaymentMethod.COD)
+				.totalAmount(new BigDecimal("1000000"))
+				.status(status)
+				.build()).getId();
+	}
+
+	private OrderStatus status(String orderId) {
+		return OrderStatus.valueOf(jdbcTemplate.queryForObject("SELECT status FROM orders WHERE id = ?", String.class, orderId));
+	}
+
+	private int statusEmails(List<String> orderIds) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_events WHERE type = 'ORDER_STATUS_UPDATE' " +
+				"AND aggregate_id = ANY (?)", Integer.class, (Object) orderIds.toArray(new String[0]));
+	}
+}
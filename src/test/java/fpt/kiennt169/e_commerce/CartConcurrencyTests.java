@@ -0,0 +1,123 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.dtos.cart.AddToCartRequest;
+import fpt.kiennt169.e_commerce.dtos.cart.CartDTO;
+import fpt.kiennt169.e_commerce.entities.Product;
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.exceptions.ConflictException;
+import fpt.kiennt169.e_commerce.repositories.CartRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.services.CartService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent writes to one cart: the unique constraints keep one cart per session, and every add
+ * that reports success is counted exactly once in its line and in the cart totals.
+ * Needs the PostgreSQL database from docker-compose.
+ *
+ * Run: ./mvnw test -Dtest=CartConcurrencyTests
+ */
+@SpringBootTest
+class CartConcurrencyTests {
+
+	private static final int THREADS = 8;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ProductVariantRepository variantRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long productId;
+	private Long variantId;
+	private String sessionId;
+
+	@BeforeEach
+	void setUp() {
+		Product product = productRepository.save(Product.builder()
+				.name("Cart Concurrency Test Product")
+				.basePrice(new BigDecimal("1000000"))
+				.isActive(true)
+				.build());
+		productId = product.getId();
+		variantId = variantRepository.save(ProductVariant.builder()
+				.sku("TEST-" + UUID.randomUUID())
+				.size("42")
+				.color("TEST")
+				.price(new BigDecimal("1000000"))
+				.stockQuantity(100)
+				.product(product)
+				.build()).getId();
+		sessionId = UUID.randomUUID().toString();
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id IN (SELECT id FROM carts WHERE session_id = ?)", sessionId);
+		jdbcTemplate.update("DELETE FROM carts WHERE session_id = ?", sessionId);
+		variantRepository.deleteById(variantId);
+		productRepository.deleteById(productId);
+	}
+
+	@Test
+	void uniqueConstraintsArePresent() {
+		assertThat(cartRepository.findUniqueConstraintNames()).contains("uk_carts_user", "uk_carts_session");
+	}
+
+	@Test
+	void concurrentAddsUpsertOneLine() throws InterruptedException {
+		AtomicInteger succeeded = new AtomicInteger();
+		CountDownLatch startLatch = new CountDownLatch(1);
+		CountDownLatch doneLatch = new CountDownLatch(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			new Thread(() -> {
+				try {
+					startLatch.await();
+					AddToCartRequest request = new AddToCartRequest();
+					request.setVariantId(variantId);
+					request.setQuantity(1);
+					cartService.addToCart(null, sessionId, request);
+					succeeded.incrementAndGet();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ConflictException e) {
+					// retries exhausted under contention, the add must then leave no trace
+				} finally {
+					doneLatch.countDown();
+				}
+			}).start();
+		}
+		startLatch.countDown();
+		doneLatch.await();
+
+		CartDTO cart = cartService.getCartForSession(sessionId);
+		assertThat(succeeded.get()).isPositive();
+		assertThat(cart.getItems()).hasSize(1);
+		assertThat(cart.getItems().getFirst().getQuantity()).isEqualTo(succeeded.get());
+		assertThat(cart.getTotalItems()).isEqualTo(succeeded.get());
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM carts WHERE session_id = ?", Integer.class, sessionId))
+			.isEqualTo(1);
+	}
+}
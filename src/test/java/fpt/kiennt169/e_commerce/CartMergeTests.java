@@ -0,0 +1,147 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.dtos.cart.AddToCartRequest;
+import fpt.kiennt169.e_commerce.dtos.cart.CartDTO;
+import fpt.kiennt169.e_commerce.dtos.cart.CartItemDTO;
+import fpt.kiennt169.e_commerce.entities.Product;
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.entities.User;
+import fpt.kiennt169.e_commerce.enums.UserRole;
+import fpt.kiennt169.e_commerce.repositories.CartRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.repositories.UserRepository;
+import fpt.kiennt169.e_commerce.services.CartService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Guest cart merge on login: one line per variant with summed quantities, line snapshots
+ * carried over, totals that match the lines and no guest cart left behind.
+ * Needs the PostgreSQL database from docker-compose.
+ *
+ * Run: ./mvnw test -Dtest=CartMergeTests
+ */
+@SpringBootTest
+class CartMergeTests {
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ProductVariantRepository variantRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long userId;
+	private Long productId;
+	private Long firstVariantId;
+	private Long secondVariantId;
+	private String sessionId;
+
+	@BeforeEach
+	void setUp() {
+		Product product = productRepository.save(Product.builder()
+				.name("Cart Test Product")
+				.basePrice(new BigDecimal("1000000"))
+				.isActive(true)
+				.build());
+		productId = product.getId();
+		firstVariantId = createVariant(product, new BigDecimal("1000000"));
+		secondVariantId = createVariant(product, new BigDecimal("2500000"));
+		userId = userRepository.save(User.builder()
+				.email("cart-" + UUID.randomUUID() + "@test.local")
+				.passwordHash("not-a-real-hash")
+				.fullName("Cart Test")
+				.role(UserRole.CUSTOMER)
+				.build()).getId();
+		sessionId = UUID.randomUUID().toString();
+	}
+
+	@AfterEach
+	void tearDown() {
+		String carts = "SELECT id FROM carts WHERE user_id = ? OR session_id = ?";
+		jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id IN (" + carts + ")", userId, sessionId);
+		jdbcTemplate.update("DELETE FROM carts WHERE id IN (" + carts + ")", userId, sessionId);
+		variantRepository.deleteById(firstVariantId);
+		variantRepository.deleteById(secondVariantId);
+		productRepository.deleteById(productId);
+		userRepository.deleteById(userId);
+	}
+
+	@Test
+	void guestCartMergesIntoUserCart() {
+		cartService.addToCart(null, sessionId, request(firstVariantId, 2));
+		cartService.addToCart(null, sessionId, request(secondVariantId, 1));
+		cartService.addToCart(userId, null, request(firstVariantId, 1));
+
+		cartService.mergeGuestCart(userId, sessionId);
+
+		CartDTO cart = cartService.getCartForUser(userId);
+		Map<Long, CartItemDTO> lines = cart.getItems().stream()
+				.collect(Collectors.toMap(CartItemDTO::getVariantId, Function.identity()));
+		assertThat(lines).hasSize(2);
+		assertThat(lines.get(firstVariantId).getQuantity()).isEqualTo(3);
+		assertThat(lines.get(secondVariantId).getQuantity()).isEqualTo(1);
+		assertThat(lines.values()).allSatisfy(line -> {
+			assertThat(line.getProductName()).isEqualTo("Cart Test Product");
+			assertThat(line.getVariantSku()).isNotNull();
+			assertThat(line.getUnitPrice()).isNotNull();
+		});
+		assertThat(cart.getTotalItems()).isEqualTo(4);
+		assertThat(cart.getTotalPrice()).isEqualByComparingTo("5500000");
+		assertThat(cartRepository.findGuestCartId(sessionId)).isEmpty();
+	}
+
+	@Test
+	void guestCartIsHandedToUserWithoutCart() {
+		cartService.addToCart(null, sessionId, request(secondVariantId, 2));
+
+		cartService.mergeGuestCart(userId, sessionId);
+
+		CartDTO cart = cartService.getCartForUser(userId);
+		assertThat(cart.getItems()).extracting(CartItemDTO::getQuantity).containsExactly(2);
+		assertThat(cart.getTotalPrice()).isEqualByComparingTo("5000000");
+		assertThat(cartRepository.findGuestCartId(sessionId)).isEmpty();
+	}
+
+	private Long createVariant(Product product, BigDecimal price) {
+		return variantRepository.save(ProductVariant.builder()
+				.sku("TEST-" + UUID.randomUUID())
+				.size("42")
+				.color("TEST")
+				.price(price)
+				.stockQuantity(100)
+				.product(product)
+				.build()).getId();
+	}
+
+	private static AddToCartRequest request(Long variantId, int quantity) {
+		AddToCartRequest request = new AddToCartRequest();
+		request.setVariantId(variantId);
+		request.setQuantity(quantity);
+		return request;
+	}
+}
@@ -0,0 +1,105 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.entities.CartItem;
+import fpt.kiennt169.e_commerce.util.Money;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BENCHMARK - Cart total pricing: BigDecimal streams vs long minor units
+ *
+ * Prices carts of 1, 10 and 100 lines the way the cart view used to (BigDecimal multiply / add per line)
+ * and with Money (long arithmetic, one BigDecimal at the end), reporting throughput and bytes allocated per cart.
+ * Plain JUnit with warm-up rounds - no Spring context or database needed, skipped by default.
+ *
+ * Run: ./mvnw test -Dtest=CartPricingBenchmarkTests -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CartPricingBenchmarkTests {
+
+	private static final int[] CART_SIZES = {1, 10, 100};
+	private static final int WARMUP_ROUNDS = 5;
+	private static final long OPERATIONS_PER_ROUND = 2_000_000;
+
+	private static volatile long sink;
+
+	@Test
+	void compareTotalPricing() {
+		System.out.println("\n========================================");
+		System.out.println("  CART PRICING (lines per cart)");
+		System.out.println("========================================");
+		System.out.printf("%-12s %8s %14s %14s%n", "pricing", "lines", "carts/s", "bytes/cart");
+
+		for (int lines : CART_SIZES) {
+			List<BigDecimal> prices = new ArrayList<>();
+			List<CartItem> items = new ArrayList<>();
+			for (int i = 0; i < lines; i++) {
+				BigDecimal price = BigDecimal.valueOf(ThreadLocalRandom.current().nextLong(10_000, 5_000_000), 0).setScale(2);
+				prices.add(price);
+				items.add(CartItem.builder()
+						.quantity(1 + i % 3)
+						.unitPrice(Money.of(price))
+						.build());
+			}
+
+			assertThat(bigDecimalTotal(prices, items)).isEqualByComparingTo(moneyTotal(items));
+
+			run("BigDecimal", lines, OPERATIONS_PER_ROUND / lines, () -> bigDecimalTotal(prices, items).hashCode());
+			run("Money", lines, OPERATIONS_PER_ROUND / lines, () -> moneyTotal(items).hashCode());
+		}
+	}
+
+	private static BigDecimal bigDecimalTotal(List<BigDecimal> prices, List<CartItem> items) {
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < items.size(); i++) {
+			total = total.add(prices.get(i).multiply(BigDecimal.valueOf(items.get(i).getQuantity())));
+		}
+		return total;
+	}
+
+	private static BigDecimal moneyTotal(List<CartItem> items) {
+		long total = 0;
+		for (CartItem item : items) {
+			total = Math.addExact(total, item.getSubtotal().minorUnits());
+		}
+		return Money.toBigDecimal(total);
+	}
+
+	private void run(String label, int lines, long operations, Operation operation) {
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			measure(operations, operation);
+		}
+		long[] result = measure(operations, operation);
+		double seconds = result[0] / 1_000_000_000.0;
+		System.out.printf("%-12s %8d %14.0f %14.1f%n",
+				label, lines, operations / seconds, (double) result[1] / operations);
+	}
+
+	private long[] measure(long operations, Operation operation) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().threadId();
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		long acc = 0;
+		for (long i = 0; i < operations; i++) {
+			acc += operation.run();
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		sink = acc;
+		return new long[]{elapsed, allocated};
+	}
+
+	@FunctionalInterface
+	private interface Operation {
+		long run();
+	}
+}
@@ -0,0 +1,147 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.dtos.cart.AddToCartRequest;
+import fpt.kiennt169.e_commerce.dtos.order.CreateOrderRequest;
+import fpt.kiennt169.e_commerce.dtos.order.OrderDTO;
+import fpt.kiennt169.e_commerce.entities.Product;
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.repositories.ProductRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.services.CartService;
+import fpt.kiennt169.e_commerce.services.CheckoutService;
+import fpt.kiennt169.e_commerce.services.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checking out again replaces the session's reservations, so the order placed afterwards
+ * confirms exactly the cart and stock is deducted once.
+ * Needs the PostgreSQL database from docker-compose.
+ *
+ * Run: ./mvnw test -Dtest=CheckoutReservationTests
+ */
+@SpringBootTest
+class CheckoutReservationTests {
+
+	private static final int STOCK = 2;
+
+	@Autowired
+	private CheckoutService checkoutService;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ProductVariantRepository variantRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long productId;
+	private Long variantId;
+	private String sessionId;
+	private String email;
+
+	@BeforeEach
+	void setUp() {
+		Product product = productRepository.save(Product.builder()
+				.name("Checkout Test Product")
+				.basePrice(new BigDecimal("1000000"))
+				.isActive(true)
+				.build());
+		productId = product.getId();
+		variantId = variantRepository.save(ProductVariant.builder()
+				.sku("TEST-" + UUID.randomUUID())
+				.size("42")
+				.color("TEST")
+				.price(new BigDecimal("1000000"))
+				.stockQuantity(STOCK)
+				.product(product)
+				.build()).getId();
+		sessionId = UUID.randomUUID().toString();
+		email = "checkout-" + UUID.randomUUID() + "@test.local";
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM outbox_events WHERE aggregate_id IN (SELECT id FROM orders WHERE customer_email = ?)", email);
+		jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)", email);
+		jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+		jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id IN (SELECT id FROM carts WHERE session_id = ?)", sessionId);
+		jdbcTemplate.update("DELETE FROM carts WHERE session_id = ?", sessionId);
+		jdbcTemplate.update("DELETE FROM inventory_reservations WHERE product_variant_id = ?", variantId);
+		variantRepository.deleteById(variantId);
+		productRepository.deleteById(productId);
+	}
+
+	@Test
+	void repeatedCheckoutThenOrderSucceeds() {
+		cartService.addToCart(null, sessionId, request(STOCK));
+
+		// the whole stock is in the cart, so a second set of reservations could not even be taken
+		checkoutService.prepareCheckout(null, sessionId);
+		checkoutService.prepareCheckout(null, sessionId);
+		assertThat(activeReserved()).isEqualTo(STOCK);
+
+		OrderDTO order = orderService.createOrder(null, sessionId, orderRequest(), null);
+
+		assertThat(order.getId()).isNotNull();
+		assertStock(0, 0);
+	}
+
+	@Test
+	void checkoutAfterCartChangeThenOrderSucceeds() {
+		cartService.addToCart(null, sessionId, request(1));
+		checkoutService.prepareCheckout(null, sessionId);
+
+		cartService.addToCart(null, sessionId, request(1));
+		checkoutService.prepareCheckout(null, sessionId);
+		assertThat(activeReserved()).isEqualTo(2);
+
+		orderService.createOrder(null, sessionId, orderRequest(), null);
+
+		assertStock(STOCK - 2, 0);
+	}
+
+	private void assertStock(int stockQuantity, int reservedQuantity) {
+		ProductVariant variant = variantRepository.findById(variantId).orElseThrow();
+		assertThat(variant.getStockQuantity()).isEqualTo(stockQuantity);
+		assertThat(variant.getReservedQuantity()).isEqualTo(reservedQuantity);
+	}
+
+	private int activeReserved() {
+		return jdbcTemplate.queryForObject("SELECT COALESCE(SUM(quantity), 0) FROM inventory_reservations " +
+				"WHERE product_variant_id = ? AND status = 'ACTIVE'", Integer.class, variantId);
+	}
+
+	private AddToCartRequest request(int quantity) {
+		AddToCartRequest request = new AddToCartRequest();
+		request.setVariantId(variantId);
+		request.setQuantity(quantity);
+		return request;
+	}
+
+	private CreateOrderRequest orderRequest() {
+		return CreateOrderRequest.builder()
+				.customerName("Checkout Buyer")
+				.customerEmail(email)
+				.paymentMethod("COD")
+				.shippingAddress("1 Test Street")
+				.build();
+	}
+}
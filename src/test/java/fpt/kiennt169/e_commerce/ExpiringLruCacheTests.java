@@ -0,0 +1,88 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.util.ExpiringLruCache;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A value read before an invalidation must never be cached afterwards,
+ * whether or not the key is still in the LRU map when the late put arrives.
+ *
+ * Run: ./mvnw test -Dtest=ExpiringLruCacheTests
+ */
+class ExpiringLruCacheTests {
+
+	@Test
+	void stalePutIsRejectedAfterInvalidate() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60_000);
+		long stamp = cache.stamp();
+
+		cache.invalidate("cart");
+		cache.put("cart", "stale", stamp);
+
+		assertThat(cache.get("cart")).isEmpty();
+	}
+
+	@Test
+	void stalePutIsRejectedAfterTheInvalidationWasEvicted() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2, 60_000);
+		long stamp = cache.stamp();
+
+		cache.invalidate("cart");
+		// push well past maxEntries so nothing about "cart" can still be in the LRU map
+		for (int i = 0; i < 10; i++) {
+			cache.put("other-" + i, "value", cache.stamp());
+		}
+		cache.put("cart", "stale", stamp);
+
+		assertThat(cache.get("cart")).isEmpty();
+		assertThat(cache.size()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	void stalePutIsRejectedAfterTheInvalidationExpired() throws InterruptedException {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 1);
+		long stamp = cache.stamp();
+
+		cache.invalidate("cart");
+		Thread.sleep(5);
+		cache.put("cart", "stale", stamp);
+
+		assertThat(cache.get("cart")).isEmpty();
+	}
+
+	@Test
+	void valueReadAfterInvalidateIsCached() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60_000);
+		cache.put("cart", "old", cache.stamp());
+
+		cache.invalidate("cart");
+		cache.put("cart", "fresh", cache.stamp());
+
+		assertThat(cache.get("cart")).contains("fresh");
+	}
+
+	@Test
+	void invalidateDoesNotTakeAnLruSlot() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2, 60_000);
+		cache.put("a", "1", cache.stamp());
+		cache.put("b", "2", cache.stamp());
+
+		cache.invalidate("c");
+
+		assertThat(cache.get("a")).contains("1");
+		assertThat(cache.get("b")).contains("2");
+	}
+
+	@Test
+	void stalePutIsRejectedAfterInvalidateAll() {
+		ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60_000);
+		long stamp = cache.stamp();
+
+		cache.invalidateAll();
+		cache.put("cart", "stale", stamp);
+
+		assertThat(cache.get("cart")).isEmpty();
+	}
+}
@@ -0,0 +1,163 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.enums.ReservationMode;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.services.InventoryService;
+import fpt.kiennt169.e_commerce.services.StockBucketService;
+import fpt.kiennt169.e_commerce.services.impl.ReservationAdmission;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BENCHMARK - Reservation contention on a single hot variant
+ *
+ * Compares LOCKING (row lock + SUM) with CONDITIONAL_UPDATE (guarded UPDATE)
+ * at 1, 8, 64 and 512 concurrent reservers hitting the same variant,
+ * then CONDITIONAL_UPDATE on the variant row against the same variant split into stock buckets.
+ * Admission control is switched off so every request reaches the database.
+ * Needs the PostgreSQL database from docker-compose, skipped by default.
+ *
+ * Run: ./mvnw test -Dtest=InventoryContentionBenchmarkTests -Dbenchmark=true
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class InventoryContentionBenchmarkTests {
+
+	private static final int[] CONCURRENCY_LEVELS = {1, 8, 64, 512};
+	private static final int RESERVATIONS_PER_RUN = 2048;
+	private static final int STOCK_BUCKETS = 16;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private ProductVariantRepository variantRepository;
+
+	@Autowired
+	private ReservationAdmission admission;
+
+	@Autowired
+	private StockBucketService stockBucketService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long variantId;
+	private ReservationMode configuredMode;
+
+	@BeforeEach
+	void setUp() {
+		ProductVariant variant = variantRepository.save(ProductVariant.builder()
+				.sku("BENCH-" + UUID.randomUUID())
+				.size("42")
+				.color("BENCH")
+				.price(new BigDecimal("1000000"))
+				.stockQuantity(Integer.MAX_VALUE / 2)
+				.build());
+		variantId = variant.getId();
+		configuredMode = (ReservationMode) ReflectionTestUtils.getField(target(), "reservationMode");
+		ReflectionTestUtils.setField(admission, "enabled", false);
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.setField(target(), "reservationMode", configuredMode);
+		ReflectionTestUtils.setField(admission, "enabled", true);
+		jdbcTemplate.update("DELETE FROM inventory_reservations WHERE product_variant_id = ?", variantId);
+		jdbcTemplate.update("DELETE FROM stock_buckets WHERE variant_id = ?", variantId);
+		variantRepository.deleteById(variantId);
+	}
+
+	@Test
+	void compareReservationModes() throws InterruptedException {
+		System.out.println("\n========================================");
+		System.out.println("  RESERVATION CONTENTION (1 variant)");
+		System.out.println("========================================");
+		System.out.printf("%-20s %8s %12s %12s %8s%n", "mode", "threads", "ops/s", "avg ms", "failed");
+
+		for (ReservationMode mode : ReservationMode.values()) {
+			ReflectionTestUtils.setField(target(), "reservationMode", mode);
+			for (int threads : CONCURRENCY_LEVELS) {
+				run(mode.name(), threads);
+			}
+		}
+	}
+
+	@Test
+	void compareStockBuckets() throws InterruptedException {
+		System.out.println("\n========================================");
+		System.out.println("  STOCK BUCKETS (1 variant)");
+		System.out.println("========================================");
+		System.out.printf("%-20s %8s %12s %12s %8s%n", "variant", "threads", "ops/s", "avg ms", "failed");
+
+		ReflectionTestUtils.setField(target(), "reservationMode", ReservationMode.CONDITIONAL_UPDATE);
+		for (int threads : CONCURRENCY_LEVELS) {
+			run("single row", threads);
+		}
+
+		stockBucketService.configureBuckets(variantId, STOCK_BUCKETS);
+		for (int threads : CONCURRENCY_LEVELS) {
+			run(STOCK_BUCKETS + " buckets", threads);
+		}
+	}
+
+	private void run(String label, int threads) throws InterruptedException {
+		int perThread = Math.max(1, RESERVATIONS_PER_RUN / threads);
+		AtomicInteger failed = new AtomicInteger();
+		CountDownLatch startLatch = new CountDownLatch(1);
+		CountDownLatch doneLatch = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			String sessionId = "bench-" + UUID.randomUUID();
+			Thread thread = new Thread(() -> {
+				try {
+					startLatch.await();
+					for (int i = 0; i < perThread; i++) {
+						try {
+							inventoryService.reserveStock(variantId, 1, sessionId);
+						} catch (Exception e) {
+							failed.incrementAndGet();
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					doneLatch.countDown();
+				}
+			});
+			thread.start();
+		}
+
+		long start = System.nanoTime();
+		startLatch.countDown();
+		doneLatch.await();
+		double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+
+		int total = perThread * threads;
+		System.out.printf("%-20s %8d %12.0f %12.3f %8d%n",
+				label, threads, total / (elapsedMs / 1000.0), elapsedMs / total * threads, failed.get());
+
+		assertThat(failed.get())
+			.withFailMessage("Stock is effectively unlimited, no reservation should fail (%s, threads=%d)", label, threads)
+			.isZero();
+	}
+
+	private Object target() {
+		return AopTestUtils.getTargetObject(inventoryService);
+	}
+}
@@ -0,0 +1,161 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.repositories.InventoryReservationRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.services.InventoryService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * reserved_quantity must always equal the SUM of ACTIVE reservations, whatever mix of
+ * reserve, release and expiry runs concurrently against a variant.
+ * Needs the PostgreSQL database from docker-compose.
+ *
+ * Run: ./mvnw test -Dtest=InventoryReservationConsistencyTests
+ */
+@SpringBootTest
+class InventoryReservationConsistencyTests {
+
+	private static final int STOCK = 10;
+	private static final int THREADS = 32;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private ProductVariantRepository variantRepository;
+
+	@Autowired
+	private InventoryReservationRepository reservationRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long variantId;
+
+	@BeforeEach
+	void setUp() {
+		ProductVariant variant = variantRepository.save(ProductVariant.builder()
+				.sku("TEST-" + UUID.randomUUID())
+				.size("42")
+				.color("TEST")
+				.price(new BigDecimal("1000000"))
+				.stockQuantity(STOCK)
+				.build());
+		variantId = variant.getId();
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM inventory_reservations WHERE product_variant_id = ?", variantId);
+		variantRepository.deleteById(variantId);
+	}
+
+	@Test
+	void concurrentReservationsNeverOversell() throws InterruptedException {
+		AtomicInteger succeeded = new AtomicInteger();
+		runConcurrently(THREADS, i -> {
+			inventoryService.reserveStock(variantId, 1, "test-" + UUID.randomUUID());
+			succeeded.incrementAndGet();
+		});
+
+		assertThat(succeeded.get()).isEqualTo(STOCK);
+		assertThat(reservedQuantity()).isEqualTo(STOCK);
+		assertThat(reservationRepository.getTotalReservedQuantity(variantId)).isEqualTo(STOCK);
+	}
+
+	@Test
+	void racingReleaseAndExpiryReleaseEachReservationOnce() throws InterruptedException {
+		List<String> sessions = new ArrayList<>();
+		for (int i = 0; i < STOCK; i++) {
+			String sessionId = "test-" + UUID.randomUUID();
+			inventoryService.reserveStock(variantId, 1, sessionId);
+			sessions.add(sessionId);
+		}
+		jdbcTemplate.update("UPDATE inventory_reservations SET expiry_time = now() - interval '1 minute' " +
+				"WHERE product_variant_id = ?", variantId);
+
+		// every session is released twice while sweeps expire the same rows
+		runConcurrently(STOCK * 3, i -> {
+			if (i < STOCK * 2) {
+				inventoryService.releaseStock(variantId, 1, sessions.get(i % STOCK));
+			} else {
+				inventoryService.cleanupExpiredReservations(STOCK);
+			}
+		});
+
+		assertThat(reservationRepository.getTotalReservedQuantity(variantId)).isZero();
+		assertThat(reservedQuantity())
+			.withFailMessage("reserved_quantity drifted to %d after racing release and expiry", reservedQuantity())
+			.isZero();
+	}
+
+	@Test
+	void releaseAfterConfirmDoesNotTouchReservedQuantity() {
+		String sessionId = "test-" + UUID.randomUUID();
+		inventoryService.reserveStock(variantId, 3, sessionId);
+
+		assertThat(inventoryService.confirmStock(sessionId)).containsEntry(variantId, 3);
+		inventoryService.releaseStock(variantId, 3, sessionId);
+
+		ProductVariant variant = variantRepository.findById(variantId).orElseThrow();
+		assertThat(variant.getStockQuantity()).isEqualTo(STOCK - 3);
+		assertThat(variant.getReservedQuantity()).isZero();
+	}
+
+	@Test
+	void resyncRepairsDriftedReservedQuantity() {
+		inventoryService.reserveStock(variantId, 2, "test-" + UUID.randomUUID());
+		jdbcTemplate.update("UPDATE product_variants SET reserved_quantity = 7 WHERE id = ?", variantId);
+
+		inventoryService.resyncReservedQuantities(500);
+
+		assertThat(reservedQuantity()).isEqualTo(2);
+	}
+
+	private int reservedQuantity() {
+		return jdbcTemplate.queryForObject(
+				"SELECT reserved_quantity FROM product_variants WHERE id = ?", Integer.class, variantId);
+	}
+
+	private void runConcurrently(int threads, ThrowingTask task) throws InterruptedException {
+		CountDownLatch startLatch = new CountDownLatch(1);
+		CountDownLatch doneLatch = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			int index = t;
+			new Thread(() -> {
+				try {
+					startLatch.await();
+					task.run(index);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (Exception e) {
+					// insufficient stock and admission rejections are expected under contention
+				} finally {
+					doneLatch.countDown();
+				}
+			}).start();
+		}
+		startLatch.countDown();
+		doneLatch.await();
+	}
+
+	@FunctionalInterface
+	private interface ThrowingTask {
+		void run(int index) throws Exception;
+	}
+}
@@ -0,0 +1,160 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.dtos.CursorPageResponse;
+import fpt.kiennt169.e_commerce.dtos.order.OrderListDTO;
+import fpt.kiennt169.e_commerce.entities.Order;
+import fpt.kiennt169.e_commerce.entities.OrderItem;
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.entities.User;
+import fpt.kiennt169.e_commerce.enums.OrderStatus;
+import fpt.kiennt169.e_commerce.enums.PaymentMethod;
+import fpt.kiennt169.e_commerce.enums.UserRole;
+import fpt.kiennt169.e_commerce.exceptions.BadRequestException;
+import fpt.kiennt169.e_commerce.repositories.OrderRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.repositories.UserRepository;
+import fpt.kiennt169.e_commerce.services.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Keyset pages of a user's orders: every order exactly once, newest first, including orders that share
+ * a created_at and a last page that ends exactly on the page size.
+ * Needs the PostgreSQL database from docker-compose.
+ *
+ * Run: ./mvnw test -Dtest=OrderCursorPagingTests
+ */
+@SpringBootTest
+class OrderCursorPagingTests {
+
+	private static final int ORDERS = 7;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ProductVariantRepository variantRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long userId;
+	private Long variantId;
+	private List<String> expected;
+
+	@BeforeEach
+	void setUp() {
+		User user = userRepository.save(User.builder()
+				.email("cursor-" + UUID.randomUUID() + "@test.local")
+				.passwordHash("not-a-real-hash")
+				.fullName("Cursor Test")
+				.role(UserRole.CUSTOMER)
+				.build());
+		ProductVariant variant = variantRepository.save(ProductVariant.builder()
+				.sku("TEST-" + UUID.randomUUID())
+				.size("42")
+				.color("TEST")
+				.price(new BigDecimal("1000000"))
+				.stockQuantity(0)
+				.build());
+		userId = user.getId();
+		variantId = variant.getId();
+
+		// five orders share one timestamp, so only the id tie-break separates them
+		LocalDateTime shared = LocalDateTime.of(2025, 1, 1, 12, 0);
+		List<Order> orders = new ArrayList<>();
+		for (int i = 0; i < ORDERS; i++) {
+			Order order = Order.builder()
+					.user(user)
+					.customerName("Cursor Test")
+					.paymentMethod(PaymentMethod.COD)
+					.totalAmount(new BigDecimal("2000000"))
+					.status(OrderStatus.PENDING)
+					.build();
+			order.addItem(OrderItem.builder()
+					.productVariant(variant)
+					.quantity(2)
+					.priceAtPurchase(new BigDecimal("1000000"))
+					.build());
+			String id = orderRepository.save(order).getId();
+			LocalDateTime createdAt = i < 5 ? shared : shared.plusMinutes(i);
+			jdbcTemplate.update("UPDATE orders SET created_at = ? WHERE id = ?", Timestamp.valueOf(createdAt), id);
+			orders.add(Order.builder().id(id).createdAt(createdAt).build());
+		}
+		expected = orders.stream()
+				.sorted(Comparator.comparing(Order::getCreatedAt).thenComparing(Order::getId).reversed())
+				.map(Order::getId)
+				.toList();
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE user_id = ?)", userId);
+		jdbcTemplate.update("DELETE FROM orders WHERE user_id = ?", userId);
+		variantRepository.deleteById(variantId);
+		userRepository.deleteById(userId);
+	}
+
+	@Test
+	void pagesCoverEveryOrderOnceInOrder() {
+		assertThat(readAll(3)).isEqualTo(expected);
+		assertThat(readAll(1)).isEqualTo(expected);
+	}
+
+	@Test
+	void lastPageEndingOnPageSizeHasNoNextCursor() {
+		CursorPageResponse<OrderListDTO> page = orderService.getUserOrders(userId, null, ORDERS);
+
+		assertThat(page.getContent()).hasSize(ORDERS);
+		assertThat(page.isHasNext()).isFalse();
+		assertThat(page.getNextCursor()).isNull();
+	}
+
+	@Test
+	void summaryCarriesItemCount() {
+		CursorPageResponse<OrderListDTO> page = orderService.getUserOrders(userId, null, ORDERS);
+
+		assertThat(page.getContent()).extracting(OrderListDTO::getTotalItems).containsOnly(2);
+	}
+
+	@Test
+	void invalidCursorIsRejected() {
+		assertThatThrownBy(() -> orderService.getUserOrders(userId, "not-a-cursor", 3))
+			.isInstanceOf(BadRequestException.class);
+	}
+
+	private List<String> readAll(int size) {
+		List<String> ids = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			CursorPageResponse<OrderListDTO> page = orderService.getUserOrders(userId, cursor, size);
+			page.getContent().forEach(order -> ids.add(order.getId()));
+			cursor = page.getNextCursor();
+			assertThat(page.isHasNext()).isEqualTo(cursor != null);
+			assertThat(++pages).isLessThanOrEqualTo(ORDERS);
+		} while (cursor != null);
+		return ids;
+	}
+}
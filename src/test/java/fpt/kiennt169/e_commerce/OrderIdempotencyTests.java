@@ -0,0 +1,165 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.dtos.cart.AddToCartRequest;
+import fpt.kiennt169.e_commerce.dtos.order.CreateOrderRequest;
+import fpt.kiennt169.e_commerce.dtos.order.OrderDTO;
+import fpt.kiennt169.e_commerce.entities.Product;
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.exceptions.ConflictException;
+import fpt.kiennt169.e_commerce.repositories.ProductRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.services.CartService;
+import fpt.kiennt169.e_commerce.services.CheckoutService;
+import fpt.kiennt169.e_commerce.services.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Retries of an order request with the same Idempotency-Key, sequential or concurrent,
+ * must create exactly one order and replay its response.
+ * Needs the PostgreSQL database from docker-compose.
+ *
+ * Run: ./mvnw test -Dtest=OrderIdempotencyTests
+ */
+@SpringBootTest
+class OrderIdempotencyTests {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private CheckoutService checkoutService;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ProductVariantRepository variantRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Long productId;
+	private Long variantId;
+	private String sessionId;
+	private String email;
+
+	@BeforeEach
+	void setUp() {
+		Product product = productRepository.save(Product.builder()
+				.name("Idempotency Test Product")
+				.basePrice(new BigDecimal("1000000"))
+				.isActive(true)
+				.build());
+		ProductVariant variant = variantRepository.save(ProductVariant.builder()
+				.sku("TEST-" + UUID.randomUUID())
+				.size("42")
+				.color("TEST")
+				.price(new BigDecimal("1000000"))
+				.stockQuantity(5)
+				.product(product)
+				.build());
+		productId = product.getId();
+		variantId = variant.getId();
+		sessionId = UUID.randomUUID().toString();
+		email = "idempotency-" + UUID.randomUUID() + "@test.local";
+
+		AddToCartRequest addToCartRequest = new AddToCartRequest();
+		addToCartRequest.setVariantId(variantId);
+		addToCartRequest.setQuantity(1);
+		cartService.addToCart(null, sessionId, addToCartRequest);
+		checkoutService.prepareCheckout(null, sessionId);
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM outbox_events WHERE aggregate_id IN (SELECT id FROM orders WHERE customer_email = ?)", email);
+		jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)", email);
+		jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+		jdbcTemplate.update("DELETE FROM idempotency_keys WHERE id LIKE ?", "session:" + sessionId + ":%");
+		jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id IN (SELECT id FROM carts WHERE session_id = ?)", sessionId);
+		jdbcTemplate.update("DELETE FROM carts WHERE session_id = ?", sessionId);
+		jdbcTemplate.update("DELETE FROM inventory_reservations WHERE product_variant_id = ?", variantId);
+		variantRepository.deleteById(variantId);
+		productRepository.deleteById(productId);
+	}
+
+	@Test
+	void retryReplaysTheFirstOrder() {
+		String key = UUID.randomUUID().toString();
+
+		OrderDTO first = orderService.createOrder(null, sessionId, request("Idempotent Buyer"), key);
+		OrderDTO retry = orderService.createOrder(null, sessionId, request("Idempotent Buyer"), key);
+
+		assertThat(retry.getId()).isEqualTo(first.getId());
+		assertThat(orderCount()).isEqualTo(1);
+	}
+
+	@Test
+	void sameKeyWithDifferentRequestIsRejected() {
+		String key = UUID.randomUUID().toString();
+		orderService.createOrder(null, sessionId, request("Idempotent Buyer"), key);
+
+		assertThatThrownBy(() -> orderService.createOrder(null, sessionId, request("Someone Else"), key))
+			.isInstanceOf(ConflictException.class);
+		assertThat(orderCount()).isEqualTo(1);
+	}
+
+	@Test
+	void concurrentRetriesCreateOneOrder() throws InterruptedException {
+		String key = UUID.randomUUID().toString();
+		int threads = 8;
+		Set<String> orderIds = ConcurrentHashMap.newKeySet();
+		CountDownLatch startLatch = new CountDownLatch(1);
+		CountDownLatch doneLatch = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				try {
+					startLatch.await();
+					orderIds.add(orderService.createOrder(null, sessionId, request("Idempotent Buyer"), key).getId());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (Exception e) {
+					System.out.println("Retry failed: " + e.getMessage());
+				} finally {
+					doneLatch.countDown();
+				}
+			}).start();
+		}
+		startLatch.countDown();
+		doneLatch.await();
+
+		assertThat(orderIds).hasSize(1);
+		assertThat(orderCount()).isEqualTo(1);
+	}
+
+	private CreateOrderRequest request(String customerName) {
+		return CreateOrderRequest.builder()
+				.customerName(customerName)
+				.customerEmail(email)
+				.paymentMethod("COD")
+				.shippingAddress("1 Test Street")
+				.build();
+	}
+
+	private int orderCount() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders WHERE customer_email = ?", Integer.class, email);
+	}
+}
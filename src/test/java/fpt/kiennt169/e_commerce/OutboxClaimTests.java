@@ -0,0 +1,158 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.entities.OutboxEvent;
+import fpt.kiennt169.e_commerce.enums.OutboxEventType;
+import fpt.kiennt169.e_commerce.repositories.OutboxEventRepository;
+import fpt.kiennt169.e_commerce.repositories.projections.ClaimedOutboxEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two dispatchers never claim the same event, a claimed event stays hidden until its lease runs out,
+ * a dispatcher that overran its lease cannot record outcomes, and a delivered event is never claimed again.
+ * Events are due far in the future so the running dispatcher leaves them alone.
+ * Needs the PostgreSQL database from docker-compose.
+ *
+ * Run: ./mvnw test -Dtest=OutboxClaimTests
+ */
+@SpringBootTest
+class OutboxClaimTests {
+
+	private static final int EVENTS = 20;
+	private static final int BATCH = 1000;
+
+	@Autowired
+	private OutboxEventRepository outboxRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private String aggregateId;
+	private Set<Long> eventIds;
+	private LocalDateTime due;
+
+	@BeforeEach
+	void setUp() {
+		aggregateId = "outbox-test-" + UUID.randomUUID();
+		due = LocalDateTime.now().plusYears(10).truncatedTo(ChronoUnit.MICROS);
+		List<OutboxEvent> events = new ArrayList<>();
+		for (int i = 0; i < EVENTS; i++) {
+			events.add(OutboxEvent.builder()
+					.type(OutboxEventType.ORDER_CONFIRMATION)
+					.aggregateId(aggregateId)
+					.nextAttemptAt(due)
+					.build());
+		}
+		eventIds = new HashSet<>();
+		outboxRepository.saveAll(events).forEach(event -> eventIds.add(event.getId()));
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM outbox_events WHERE aggregate_id = ?", aggregateId);
+	}
+
+	@Test
+	void concurrentDispatchersClaimDisjointEvents() throws Exception {
+		CountDownLatch firstClaimed = new CountDownLatch(1);
+		CountDownLatch secondClaimed = new CountDownLatch(1);
+
+		// the first dispatcher keeps its transaction open until the second one has claimed
+		CompletableFuture<Set<Long>> first = CompletableFuture.supplyAsync(() -> transactionTemplate.execute(status -> {
+			Set<Long> claimed = mine(outboxRepository.claimDue(due, due.plusMinutes(1), EVENTS / 2));
+			firstClaimed.countDown();
+			await(secondClaimed);
+			return claimed;
+		}));
+		await(firstClaimed);
+		Set<Long> second = transactionTemplate.execute(status -> mine(outboxRepository.claimDue(due, due.plusMinutes(1), BATCH)));
+		secondClaimed.countDown();
+		Set<Long> firstIds = first.get(10, TimeUnit.SECONDS);
+
+		assertThat(firstIds).doesNotContainAnyElementsOf(second);
+		Set<Long> all = new HashSet<>(firstIds);
+		all.addAll(second);
+		assertThat(all).isEqualTo(eventIds);
+	}
+
+	@Test
+	void claimedEventIsHiddenUntilItsLeaseRunsOut() {
+		LocalDateTime leaseUntil = due.plusMinutes(1);
+		List<ClaimedOutboxEvent> claimed = claim(due, leaseUntil);
+		assertThat(claimed).extracting(ClaimedOutboxEvent::getAttempts).containsOnly(1);
+
+		assertThat(claim(leaseUntil.minusSeconds(1), leaseUntil.plusMinutes(1))).isEmpty();
+
+		List<ClaimedOutboxEvent> reclaimed = claim(leaseUntil, leaseUntil.plusMinutes(1));
+		assertThat(reclaimed).extracting(ClaimedOutboxEvent::getId).containsExactlyInAnyOrderElementsOf(eventIds);
+		assertThat(reclaimed).extracting(ClaimedOutboxEvent::getAttempts).containsOnly(2);
+	}
+
+	@Test
+	void sentEventIsNeverClaimedAgain() {
+		LocalDateTime leaseUntil = due.plusMinutes(1);
+		claim(due, leaseUntil);
+		transactionTemplate.executeWithoutResult(status -> outboxRepository.markSent(eventIds, leaseUntil, due));
+
+		assertThat(claim(leaseUntil.plusYears(1), leaseUntil.plusYears(2))).isEmpty();
+	}
+
+	@Test
+	void overrunDispatcherCannotRecordOutcomes() {
+		LocalDateTime firstLease = due.plusMinutes(1);
+		claim(due, firstLease);
+		LocalDateTime secondLease = firstLease.plusMinutes(1);
+		claim(firstLease, secondLease);
+
+		// the first dispatcher finishes late: its outcomes must not touch the second claim
+		int marked = transactionTemplate.execute(status -> outboxRepository.markSent(eventIds, firstLease, firstLease));
+		assertThat(marked).isZero();
+
+		int markedBySecond = transactionTemplate.execute(status -> outboxRepository.markSent(eventIds, secondLease, firstLease));
+		assertThat(markedBySecond).isEqualTo(EVENTS);
+	}
+
+	private List<ClaimedOutboxEvent> claim(LocalDateTime now, LocalDateTime leaseUntil) {
+		return transactionTemplate.execute(status -> outboxRepository.claimDue(now, leaseUntil, BATCH).stream()
+				.filter(event -> aggregateId.equals(event.getAggregateId()))
+				.toList());
+	}
+
+	private Set<Long> mine(List<ClaimedOutboxEvent> claimed) {
+		Set<Long> ids = new HashSet<>();
+		claimed.stream()
+				.filter(event -> aggregateId.equals(event.getAggregateId()))
+				.forEach(event -> ids.add(event.getId()));
+		return ids;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+}
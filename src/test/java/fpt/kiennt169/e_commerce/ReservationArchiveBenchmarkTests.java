@@ -0,0 +1,138 @@
+package fpt.kiennt169.e_commerce;
+
+import fpt.kiennt169.e_commerce.entities.ProductVariant;
+import fpt.kiennt169.e_commerce.repositories.InventoryReservationRepository;
+import fpt.kiennt169.e_commerce.repositories.ProductVariantRepository;
+import fpt.kiennt169.e_commerce.services.InventoryService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BENCHMARK - getTotalReservedQuantity with a growing reservation history
+ *
+ * Seeds 1M and then 10M finished reservations next to a handful of ACTIVE ones on one variant,
+ * measures the SUM, runs the archive job and measures again.
+ * Needs the PostgreSQL database from docker-compose, skipped by default.
+ *
+ * Run: ./mvnw test -Dtest=ReservationArchiveBenchmarkTests -Dbenchmark=true
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ReservationArchiveBenchmarkTests {
+
+	private static final int[] HISTORY_SIZES = {1_000_000, 10_000_000};
+	private static final int ACTIVE_RESERVATIONS = 100;
+	private static final int ARCHIVE_BATCH_SIZE = 50_000;
+	private static final int WARMUP = 20;
+	private static final int ITERATIONS = 200;
+
+	@Autowired
+	private InventoryService inventoryService;
+
+	@Autowired
+	private InventoryReservationRepository reservationRepository;
+
+	@Autowired
+	private ProductVariantRepository variantRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	private Long variantId;
+
+	@BeforeEach
+	void setUp() {
+		ProductVariant variant = variantRepository.save(ProductVariant.builder()
+				.sku("BENCH-" + UUID.randomUUID())
+				.size("42")
+				.color("BENCH")
+				.price(new BigDecimal("1000000"))
+				.stockQuantity(Integer.MAX_VALUE / 2)
+				.build());
+		variantId = variant.getId();
+
+		jdbcTemplate.update("INSERT INTO inventory_reservations " +
+				"(id, product_variant_id, quantity, session_id, expiry_time, status, created_at, updated_at) " +
+				"SELECT gen_random_uuid()::text, ?, 1, 'bench-active-' || g, now() + interval '1 day', 'ACTIVE', now(), now() " +
+				"FROM generate_series(1, ?) g", variantId, ACTIVE_RESERVATIONS);
+	}
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM inventory_reservations_archive WHERE product_variant_id = ?", variantId);
+		jdbcTemplate.update("DELETE FROM inventory_reservations WHERE product_variant_id = ?", variantId);
+		variantRepository.deleteById(variantId);
+	}
+
+	@Test
+	void compareBeforeAndAfterArchiving() {
+		System.out.println("\n========================================");
+		System.out.println("  getTotalReservedQuantity vs HISTORY");
+		System.out.println("========================================");
+		System.out.printf("%-12s %-8s %10s %10s %10s%n", "history", "phase", "avg ms", "p99 ms", "archived");
+
+		for (int historySize : HISTORY_SIZES) {
+			seedHistory(historySize);
+			measure(historySize, "before", 0);
+
+			LocalDateTime cutoff = LocalDateTime.now().minusDays(7);
+			int archived = 0;
+			int batch;
+			do {
+				batch = inventoryService.archiveReservations(cutoff, ARCHIVE_BATCH_SIZE);
+				archived += batch;
+			} while (batch >= ARCHIVE_BATCH_SIZE);
+			// what autovacuum would eventually do after the deletes
+			jdbcTemplate.execute("VACUUM ANALYZE inventory_reservations");
+
+			measure(historySize, "after", archived);
+			assertThat(archived).isGreaterThanOrEqualTo(historySize);
+		}
+	}
+
+	private void seedHistory(int rows) {
+		jdbcTemplate.update("INSERT INTO inventory_reservations " +
+				"(id, product_variant_id, quantity, session_id, expiry_time, status, created_at, updated_at) " +
+				"SELECT gen_random_uuid()::text, ?, 1, 'bench-' || g, now() - interval '30 days', " +
+				"(ARRAY['COMPLETED', 'CANCELLED', 'EXPIRED'])[1 + g % 3], " +
+				"now() - interval '30 days', now() - interval '30 days' " +
+				"FROM generate_series(1, ?) g", variantId, rows);
+		jdbcTemplate.execute("ANALYZE inventory_reservations");
+	}
+
+	private void measure(int historySize, String phase, int archived) {
+		long[] samples = new long[ITERATIONS];
+		for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+			long start = System.nanoTime();
+			Integer reserved = transactionTemplate.execute(status ->
+					reservationRepository.getTotalReservedQuantity(variantId));
+			long elapsed = System.nanoTime() - start;
+
+			assertThat(reserved).isEqualTo(ACTIVE_RESERVATIONS);
+			if (i >= WARMUP) {
+				samples[i - WARMUP] = elapsed;
+			}
+		}
+
+		Arrays.sort(samples);
+		double avgMs = Arrays.stream(samples).average().orElse(0) / 1_000_000.0;
+		double p99Ms = samples[(int) (ITERATIONS * 0.99) - 1] / 1_000_000.0;
+		System.out.printf("%-12d %-8s %10.3f %10.3f %10d%n", historySize, phase, avgMs, p99Ms, archived);
+	}
+}